@@ -0,0 +1,60 @@
+package tpv.fxcontrol;
+
+import javafx.collections.FXCollections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous {@link FilterMediator#filter(String)} over string sources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FilterMediatorBenchmark {
+
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"
+    };
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int itemCount;
+
+    /** A selective query, a broad query and a query without any match. */
+    @Param({"42", "echo", "zzz"})
+    public String query;
+
+    private FilterMediator<String> mediator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            values.add(WORDS[random.nextInt(WORDS.length)] + " item " + i);
+        }
+        mediator = new FilterMediator<>(FXCollections.observableArrayList(values));
+    }
+
+    @Benchmark
+    public List<String> filter() {
+        return mediator.filter(query);
+    }
+}
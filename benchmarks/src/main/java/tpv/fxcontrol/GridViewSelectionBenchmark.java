@@ -0,0 +1,82 @@
+package tpv.fxcontrol;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.MultipleSelectionModel;
+import javafx.scene.control.SelectionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tpv.fxcontrol.benchmark.HeadlessFx;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@code GridView.GridViewBitSetSelectionModel.updateSelection} through
+ * item list changes. The toolkit is started because every Control needs it,
+ * but the grid is never shown, so the benchmarks run on the JMH thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dglass.platform=Monocle", "-Dmonocle.platform=Headless", "-Dprism.order=sw", "-Xmx6g"})
+public class GridViewSelectionBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int itemCount;
+
+    private ObservableList<Integer> items;
+    private MultipleSelectionModel<Integer> selectionModel;
+    private boolean ascending = true;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        HeadlessFx.start();
+
+        List<Integer> values = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            values.add(i);
+        }
+        items = FXCollections.observableArrayList(values);
+
+        GridView<Integer> gridView = new GridView<>(items);
+        selectionModel = gridView.getSelectionModel();
+        selectionModel.setSelectionMode(SelectionMode.MULTIPLE);
+        selectionModel.selectAll();
+    }
+
+    @Benchmark
+    public void insertAndRemoveHead() {
+        items.add(0, -1);
+        items.remove(0);
+    }
+
+    @Benchmark
+    public void permutation() {
+        // the list is always sorted one way or the other, so the sort itself
+        // is a linear run reversal and the selection update dominates
+        ascending = !ascending;
+        items.sort(ascending ? Comparator.naturalOrder() : Comparator.reverseOrder());
+    }
+
+    @Benchmark
+    public void selectAll() {
+        selectionModel.clearSelection();
+        selectionModel.selectAll();
+    }
+}
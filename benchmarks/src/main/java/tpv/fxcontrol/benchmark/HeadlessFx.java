@@ -0,0 +1,60 @@
+package tpv.fxcontrol.benchmark;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Starts the JavaFX toolkit once per benchmark JVM and runs work on the FX
+ * application thread. Benchmarks that need the toolkit fork with
+ * {@code -Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw},
+ * so no display is needed.
+ */
+public final class HeadlessFx {
+
+    private static boolean started;
+
+    private HeadlessFx() { }
+
+    public static synchronized void start() throws InterruptedException {
+        if (started) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Platform.setImplicitExit(false);
+        Platform.startup(latch::countDown);
+        latch.await();
+        started = true;
+    }
+
+    public static void run(Runnable runnable) {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public static <V> V call(Callable<V> callable) {
+        if (Platform.isFxApplicationThread()) {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        FutureTask<V> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
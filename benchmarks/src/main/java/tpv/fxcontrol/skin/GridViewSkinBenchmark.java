@@ -0,0 +1,118 @@
+package tpv.fxcontrol.skin;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tpv.fxcontrol.GridRow;
+import tpv.fxcontrol.GridView;
+import tpv.fxcontrol.benchmark.HeadlessFx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtualization hot paths of a shown {@link GridView}. Every invocation is
+ * handed over to the FX application thread, so the numbers include a constant
+ * hand-off cost which is the same for every item count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dglass.platform=Monocle", "-Dmonocle.platform=Headless", "-Dprism.order=sw", "-Xmx6g"})
+public class GridViewSkinBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int itemCount;
+
+    private Stage stage;
+    private GridView<Integer> gridView;
+    private GridViewSkin<Integer> skin;
+    private GridRowSkin<Integer> rowSkin;
+    private ObservableList<Integer> items;
+    private boolean wide;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws InterruptedException {
+        HeadlessFx.start();
+
+        List<Integer> values = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            values.add(i);
+        }
+        items = FXCollections.observableArrayList(values);
+
+        HeadlessFx.run(() -> {
+            gridView = new GridView<>(items);
+            stage = new Stage();
+            stage.setScene(new Scene(gridView, 800, 600));
+            stage.show();
+            gridView.applyCss();
+            gridView.layout();
+
+            skin = (GridViewSkin<Integer>) gridView.getSkin();
+            GridRow<Integer> row = (GridRow<Integer>) gridView.lookup(".grid-row");
+            rowSkin = (GridRowSkin<Integer>) row.getSkin();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HeadlessFx.run(() -> stage.hide());
+    }
+
+    @Benchmark
+    public void updateItemCount() {
+        HeadlessFx.run(() -> skin.updateItemCount());
+    }
+
+    @Benchmark
+    public void updateItemCountAndLayout() {
+        HeadlessFx.run(() -> {
+            skin.updateItemCount();
+            gridView.layout();
+        });
+    }
+
+    @Benchmark
+    public void resize() {
+        HeadlessFx.run(() -> {
+            wide = !wide;
+            stage.setWidth(wide ? 1000 : 800);
+            gridView.layout();
+        });
+    }
+
+    @Benchmark
+    public void appendAndRemoveTail() {
+        HeadlessFx.run(() -> {
+            items.add(-1);
+            gridView.layout();
+            items.remove(items.size() - 1);
+            gridView.layout();
+        });
+    }
+
+    @Benchmark
+    public void updateCells() {
+        HeadlessFx.run(() -> rowSkin.updateCells());
+    }
+}
@@ -5,6 +5,8 @@ import javafx.collections.ObservableList;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
 
 interface CollectionFilterable<E> extends Filterable {
     FilterMediator getMediator();
@@ -19,38 +21,79 @@ interface CollectionFilterable<E> extends Filterable {
     }
     default void setSource(List<E> items) {
         getMediator().getSource().setAll(items);
-        reFilter();
     }
 
     default ObjectProperty<ObservableList<E>> sourceProperty(){
         return getMediator().sourceProperty();
     }
 
+    /**
+     * Sets the function which gives the text an item is matched by, instead
+     * of its {@code toString()}, and filters again.
+     */
+    default void setKeyExtractor(Function<? super E, String> keyExtractor) {
+        getMediator().setKeyExtractor(keyExtractor);
+        reFilter();
+    }
+
+    /**
+     * Sets the locale the filter text and the item texts are case-folded in,
+     * instead of the default locale, and filters again.
+     */
+    default void setFilterLocale(Locale locale) {
+        getMediator().setLocale(locale);
+        reFilter();
+    }
+
+    /**
+     * Sets the matcher which decides which items the filter text selects,
+     * {@link FilterMatcher#contains()} by default, and filters again.
+     */
+    default void setFilterMatcher(FilterMatcher matcher) {
+        getMediator().setMatcher(matcher);
+        reFilter();
+    }
+
+    /**
+     * Sets how the search keys of the items are indexed, without an index by
+     * default. An index is kept up to date as items are added and removed.
+     */
+    default void setFilterIndex(FilterIndex format) {
+        getMediator().setIndex(format);
+    }
+
+    /**
+     * Returns an estimate of the heap used by the filter index in bytes, or 0
+     * if there is no index.
+     */
+    default long getFilterIndexMemoryUsage() {
+        return getMediator().getIndexMemoryUsage();
+    }
+
+
+    /*
+     * The filtered items follow changes of the source by themselves, testing
+     * only what a change added and dropping only what it removed.
+     */
 
     default void addItems(List<E> items) {
         getMediator().getSource().addAll(items);
-        reFilter();
     }
 
     default void addItems(E... items) {
         getMediator().getSource().addAll(Arrays.asList(items));
-        reFilter();
-
     }
 
     default void removeItems(E... items) {
         getMediator().getSource().removeAll(items);
-        reFilter();
     }
 
     default void removeItems(List<E> items){
         getMediator().getSource().removeAll(items);
-        reFilter();
     }
 
     default void clear() {
         getMediator().getSource().clear();
-        reFilter();
     }
 
     default void reset() {
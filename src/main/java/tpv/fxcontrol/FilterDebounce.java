@@ -0,0 +1,85 @@
+package tpv.fxcontrol;
+
+import javafx.util.Duration;
+
+import java.util.Objects;
+
+/**
+ * When a filterable evaluates its filter text. A filter is applied once the
+ * text has been left alone for the quiet period, so typing a word costs one
+ * filter pass instead of one per keystroke; intermediate texts are dropped,
+ * and a pass still running for an older text is cancelled. The max latency
+ * caps how long a steady stream of edits can hold the filter back.
+ */
+public final class FilterDebounce {
+
+    /** Filters on every change of the filter text, the default. */
+    public static final FilterDebounce IMMEDIATE = new FilterDebounce(Duration.ZERO, Duration.ZERO);
+
+    private final Duration quietPeriod;
+    private final Duration maxLatency;
+
+    private FilterDebounce(Duration quietPeriod, Duration maxLatency) {
+        this.quietPeriod = quietPeriod;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Returns a policy filtering once the text has not changed for the quiet
+     * period, however long the edits go on.
+     */
+    public static FilterDebounce of(Duration quietPeriod) {
+        return of(quietPeriod, Duration.INDEFINITE);
+    }
+
+    /**
+     * Returns a policy filtering once the text has not changed for the quiet
+     * period, or at the latest the max latency after the first change which
+     * has not been filtered yet.
+     */
+    public static FilterDebounce of(Duration quietPeriod, Duration maxLatency) {
+        Objects.requireNonNull(quietPeriod, "quietPeriod");
+        Objects.requireNonNull(maxLatency, "maxLatency");
+        if (quietPeriod.lessThan(Duration.ZERO) || maxLatency.lessThan(Duration.ZERO)) {
+            throw new IllegalArgumentException("Durations must not be negative");
+        }
+        return new FilterDebounce(quietPeriod, maxLatency);
+    }
+
+    public Duration getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public Duration getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns true if the filter is evaluated on every change of the text.
+     */
+    public boolean isImmediate() {
+        return quietPeriod.lessThanOrEqualTo(Duration.ZERO) || maxLatency.lessThanOrEqualTo(Duration.ZERO);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FilterDebounce)) {
+            return false;
+        }
+        FilterDebounce other = (FilterDebounce) o;
+        return quietPeriod.equals(other.quietPeriod) && maxLatency.equals(other.maxLatency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(quietPeriod, maxLatency);
+    }
+
+    @Override
+    public String toString() {
+        return "FilterDebounce[quietPeriod=" + quietPeriod + ", maxLatency=" + maxLatency + "]";
+    }
+}
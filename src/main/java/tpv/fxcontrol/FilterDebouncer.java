@@ -0,0 +1,91 @@
+package tpv.fxcontrol;
+
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.util.Duration;
+
+/**
+ * Runs the filter action of a filterable according to its
+ * {@link FilterDebounce} policy. Every request restarts the quiet period, so
+ * only the last of a burst of requests runs, and the action reads the filter
+ * text when it runs rather than when it was requested.
+ * <p>
+ * This class is package private, it is used by the filterable controls.
+ */
+final class FilterDebouncer {
+
+    private final ObjectProperty<FilterDebounce> policy =
+            new SimpleObjectProperty<>(this, "filterDebounce", FilterDebounce.IMMEDIATE);
+
+    private final PauseTransition timer = new PauseTransition();
+    private final Runnable action;
+    private final Runnable cancel;
+
+    // when the oldest request not run yet was made, in nanoseconds, or -1
+    private long pendingSince = -1;
+
+    /**
+     * @param action runs the filter
+     * @param cancel drops the result of a filter pass in progress
+     */
+    FilterDebouncer(Runnable action, Runnable cancel) {
+        this.action = action;
+        this.cancel = cancel;
+        timer.setOnFinished(e -> run());
+        policy.addListener((observable, oldValue, newValue) -> flush());
+    }
+
+    ObjectProperty<FilterDebounce> policyProperty() {
+        return policy;
+    }
+
+    /**
+     * Runs the action now if the policy is immediate, else once the quiet
+     * period has passed without another request or the max latency has run
+     * out, whichever comes first.
+     */
+    void request() {
+        FilterDebounce debounce = policy.get();
+        if (debounce == null || debounce.isImmediate()) {
+            run();
+            return;
+        }
+
+        // a pass for an older text is no use anymore
+        cancel.run();
+
+        long now = System.nanoTime();
+        if (pendingSince < 0) {
+            pendingSince = now;
+        }
+        Duration delay = debounce.getQuietPeriod();
+        if (!debounce.getMaxLatency().isIndefinite()) {
+            Duration left = debounce.getMaxLatency().subtract(Duration.millis((now - pendingSince) / 1e6));
+            delay = left.lessThan(delay) ? left : delay;
+        }
+        if (delay.lessThanOrEqualTo(Duration.ZERO)) {
+            run();
+            return;
+        }
+
+        timer.stop();
+        timer.setDuration(delay);
+        timer.playFromStart();
+    }
+
+    /**
+     * Runs a pending action now, used when the policy changes.
+     */
+    void flush() {
+        if (pendingSince >= 0) {
+            run();
+        }
+    }
+
+    private void run() {
+        timer.stop();
+        pendingSince = -1;
+        action.run();
+    }
+}
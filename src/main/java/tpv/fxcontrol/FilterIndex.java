@@ -0,0 +1,25 @@
+package tpv.fxcontrol;
+
+/**
+ * How a filterable indexes the search keys of its items. With a trigram
+ * index, filter texts of three or more chars only check the items whose keys
+ * contain every trigram of the text, instead of scanning every key, at the
+ * cost of memory and of some work whenever items are added or removed.
+ */
+public enum FilterIndex {
+
+    /** No index, every filter pass scans the keys. */
+    NONE,
+
+    /**
+     * A trigram index storing each posting list as a bitset, which suits
+     * trigrams shared by a large part of the items.
+     */
+    BITSET,
+
+    /**
+     * A trigram index storing each posting list as a sorted primitive int
+     * array, which suits many rare trigrams, such as in log lines.
+     */
+    INT_ARRAY
+}
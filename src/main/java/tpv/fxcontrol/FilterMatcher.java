@@ -0,0 +1,110 @@
+package tpv.fxcontrol;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Decides which items a filter text selects. A matcher turns the filter text
+ * into a {@link Query} once per filter pass, which is where any expensive
+ * preparation belongs, such as compiling a pattern or building lookup
+ * tables; the query is then tested against the search key of every item.
+ * <p>
+ * Search keys are the item texts normalized for case-insensitive matching,
+ * and queries may be tested on several threads at once, so a query must not
+ * keep per-call state in fields.
+ */
+public interface FilterMatcher {
+
+    /**
+     * Prepares the query for a non-empty filter text.
+     *
+     * @param filter the filter text as typed
+     * @param normalizer normalizes a text the way the search keys are
+     *                   normalized
+     */
+    Query prepare(String filter, UnaryOperator<String> normalizer);
+
+    /**
+     * A prepared filter text.
+     */
+    interface Query {
+
+        /** The score of a key which does not match. */
+        int NO_MATCH = Integer.MIN_VALUE;
+
+        /**
+         * Returns true if the item with the given search key is selected.
+         */
+        boolean matches(String key);
+
+        /**
+         * Returns how relevant the item with the given search key is, higher
+         * is better, or {@link #NO_MATCH} if it does not match. Ranking calls
+         * this instead of {@link #matches}, so each key is tested once.
+         */
+        default int score(String key) {
+            return matches(key) ? 0 : NO_MATCH;
+        }
+
+        /**
+         * Returns substrings every matching key contains, which lets an index
+         * narrow down the keys to test, or null if there are none.
+         */
+        default String[] requiredSubstrings() {
+            return null;
+        }
+
+        /**
+         * Returns true if every key this query matches is also matched by the
+         * previous query, so only the previous matches need testing.
+         */
+        default boolean refines(Query previous) {
+            return false;
+        }
+    }
+
+    /**
+     * Selects the items whose text contains the filter text, the default.
+     */
+    static FilterMatcher contains() {
+        return FilterMatchers.CONTAINS;
+    }
+
+    /**
+     * Selects the items whose text starts with the filter text.
+     */
+    static FilterMatcher prefix() {
+        return FilterMatchers.PREFIX;
+    }
+
+    /**
+     * Selects the items whose text contains every whitespace separated word of
+     * the filter text, in any order.
+     */
+    static FilterMatcher tokens() {
+        return FilterMatchers.TOKENS;
+    }
+
+    /**
+     * Treats the filter text as a case-insensitive regular expression and
+     * selects the items whose text contains a match. Compiled patterns are
+     * cached, and a filter text which is not a valid expression, as it often
+     * is while it is being typed, selects nothing.
+     */
+    static FilterMatcher regex() {
+        return new FilterMatchers.RegexMatcher();
+    }
+
+    /**
+     * Selects the items whose text contains the filter text with at most the
+     * given number of inserted, deleted or substituted chars, closer matches
+     * scoring higher. A filter text gets fewer edits than it has chars, so a
+     * short text does not select everything, and texts longer than 63 chars
+     * fall back to {@link #contains()}.
+     */
+    static FilterMatcher fuzzy(int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("maxEdits must not be negative: " + maxEdits);
+        }
+        return new FilterMatchers.FuzzyMatcher(maxEdits);
+    }
+}
@@ -0,0 +1,297 @@
+package tpv.fxcontrol;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The built-in {@link FilterMatcher} engines.
+ * <p>
+ * This class is package private, the engines are created through the
+ * factories of {@link FilterMatcher}.
+ */
+final class FilterMatchers {
+
+    static final FilterMatcher CONTAINS = (filter, normalizer) -> new ContainsQuery(normalizer.apply(filter));
+    static final FilterMatcher PREFIX = (filter, normalizer) -> new PrefixQuery(normalizer.apply(filter));
+    static final FilterMatcher TOKENS = (filter, normalizer) -> new TokensQuery(normalizer.apply(filter));
+
+    // selects nothing
+    private static final FilterMatcher.Query NONE = key -> false;
+
+    private FilterMatchers() {
+    }
+
+    static final class ContainsQuery implements FilterMatcher.Query {
+        private final String filter;
+
+        ContainsQuery(String filter) {
+            this.filter = filter;
+        }
+
+        @Override public boolean matches(String key) {
+            return key.contains(filter);
+        }
+
+        // earlier and tighter matches first
+        @Override public int score(String key) {
+            int i = key.indexOf(filter);
+            return i < 0 ? NO_MATCH : -2 * i - (key.length() - filter.length());
+        }
+
+        @Override public String[] requiredSubstrings() {
+            return new String[]{filter};
+        }
+
+        @Override public boolean refines(FilterMatcher.Query previous) {
+            return previous instanceof ContainsQuery && filter.contains(((ContainsQuery) previous).filter);
+        }
+    }
+
+    static final class PrefixQuery implements FilterMatcher.Query {
+        private final String filter;
+
+        PrefixQuery(String filter) {
+            this.filter = filter;
+        }
+
+        @Override public boolean matches(String key) {
+            return key.startsWith(filter);
+        }
+
+        @Override public int score(String key) {
+            return key.startsWith(filter) ? filter.length() - key.length() : NO_MATCH;
+        }
+
+        @Override public String[] requiredSubstrings() {
+            return new String[]{filter};
+        }
+
+        @Override public boolean refines(FilterMatcher.Query previous) {
+            return previous instanceof PrefixQuery && filter.startsWith(((PrefixQuery) previous).filter);
+        }
+    }
+
+    static final class TokensQuery implements FilterMatcher.Query {
+        private final String[] tokens;
+
+        TokensQuery(String filter) {
+            String trimmed = filter.trim();
+            tokens = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+        }
+
+        @Override public boolean matches(String key) {
+            for (String token : tokens) {
+                if (!key.contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // tokens found early and in the typed order first
+        @Override public int score(String key) {
+            int score = 0;
+            int last = -1;
+            for (String token : tokens) {
+                int i = key.indexOf(token);
+                if (i < 0) {
+                    return NO_MATCH;
+                }
+                score -= i;
+                if (i < last) {
+                    score -= key.length();
+                }
+                last = i;
+            }
+            return score;
+        }
+
+        @Override public String[] requiredSubstrings() {
+            return tokens.clone();
+        }
+
+        // every key containing the new tokens contains the old ones if each
+        // old token is part of a new one
+        @Override public boolean refines(FilterMatcher.Query previous) {
+            if (!(previous instanceof TokensQuery)) {
+                return false;
+            }
+            for (String old : ((TokensQuery) previous).tokens) {
+                boolean contained = false;
+                for (String token : tokens) {
+                    if (token.contains(old)) {
+                        contained = true;
+                        break;
+                    }
+                }
+                if (!contained) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * Patterns are compiled once per filter text and kept in a small LRU
+     * cache, so going back to an earlier text, or filtering again after a
+     * source change, does not compile again.
+     */
+    static final class RegexMatcher implements FilterMatcher {
+        private static final int CACHE_SIZE = 32;
+
+        private final Map<String, FilterMatcher.Query> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FilterMatcher.Query> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+        @Override
+        public synchronized FilterMatcher.Query prepare(String filter, UnaryOperator<String> normalizer) {
+            return cache.computeIfAbsent(filter, RegexMatcher::compile);
+        }
+
+        private static FilterMatcher.Query compile(String filter) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(filter, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            } catch (PatternSyntaxException e) {
+                return NONE;
+            }
+            return new FilterMatcher.Query() {
+                @Override public boolean matches(String key) {
+                    return pattern.matcher(key).find();
+                }
+
+                @Override public int score(String key) {
+                    Matcher matcher = pattern.matcher(key);
+                    return matcher.find() ? -matcher.start() : NO_MATCH;
+                }
+            };
+        }
+    }
+
+    static final class FuzzyMatcher implements FilterMatcher {
+        private final int maxEdits;
+
+        FuzzyMatcher(int maxEdits) {
+            this.maxEdits = maxEdits;
+        }
+
+        @Override
+        public FilterMatcher.Query prepare(String filter, UnaryOperator<String> normalizer) {
+            String normalized = normalizer.apply(filter);
+            if (normalized.isEmpty() || normalized.length() > Long.SIZE - 1) {
+                return new ContainsQuery(normalized);
+            }
+            return new FuzzyQuery(normalized, Math.min(maxEdits, normalized.length() - 1));
+        }
+    }
+
+    /*
+     * Approximate substring matching with the bit-parallel algorithm of Wu
+     * and Manber: bit i of state[d] is set if the first i + 1 chars of the
+     * filter match the text ending at the current char with at most d edits,
+     * so each text char costs a few word operations per allowed edit. The
+     * char masks are built once, in the constructor.
+     */
+    static final class FuzzyQuery implements FilterMatcher.Query {
+        private final String filter;
+        private final int length;
+        private final int maxEdits;
+
+        // the masks of the chars below 128 by char, of the others by the
+        // sorted array of those chars
+        private final long[] asciiMasks = new long[128];
+        private final char[] otherChars;
+        private final long[] otherMasks;
+
+        FuzzyQuery(String filter, int maxEdits) {
+            this.filter = filter;
+            this.length = filter.length();
+            this.maxEdits = Math.max(0, maxEdits);
+
+            char[] others = new char[length];
+            int otherCount = 0;
+            for (int i = 0; i < length; i++) {
+                char c = filter.charAt(i);
+                if (c < 128) {
+                    asciiMasks[c] |= 1L << i;
+                } else if (Arrays.binarySearch(others, 0, otherCount, c) < 0) {
+                    int at = -Arrays.binarySearch(others, 0, otherCount, c) - 1;
+                    System.arraycopy(others, at, others, at + 1, otherCount - at);
+                    others[at] = c;
+                    otherCount++;
+                }
+            }
+            otherChars = Arrays.copyOf(others, otherCount);
+            otherMasks = new long[otherCount];
+            for (int i = 0; i < length; i++) {
+                char c = filter.charAt(i);
+                if (c >= 128) {
+                    otherMasks[Arrays.binarySearch(otherChars, c)] |= 1L << i;
+                }
+            }
+        }
+
+        @Override public boolean matches(String key) {
+            return edits(key) <= maxEdits;
+        }
+
+        // fewer edits first, then shorter keys
+        @Override public int score(String key) {
+            int edits = edits(key);
+            return edits > maxEdits ? NO_MATCH : -edits * (key.length() + 1) - key.length();
+        }
+
+        @Override public String[] requiredSubstrings() {
+            return maxEdits == 0 ? new String[]{filter} : null;
+        }
+
+        // the least number of edits of any match, or maxEdits + 1 if there is
+        // none
+        private int edits(String key) {
+            long found = 1L << (length - 1);
+            long[] state = new long[maxEdits + 1];
+            for (int d = 0; d <= maxEdits; d++) {
+                state[d] = (1L << d) - 1;
+            }
+
+            int best = maxEdits + 1;
+            for (int j = 0; j < key.length() && best > 0; j++) {
+                long mask = maskOf(key.charAt(j));
+                long previous = state[0];
+                state[0] = ((previous << 1) | 1) & mask;
+                if ((state[0] & found) != 0) {
+                    best = 0;
+                }
+                for (int d = 1; d <= maxEdits; d++) {
+                    long old = state[d];
+                    state[d] = (((old << 1) | 1) & mask)  // match
+                            | previous                    // insertion
+                            | ((previous << 1) | 1)       // substitution
+                            | ((state[d - 1] << 1) | 1);  // deletion
+                    previous = old;
+                    if (d < best && (state[d] & found) != 0) {
+                        best = d;
+                    }
+                }
+            }
+            return best;
+        }
+
+        private long maskOf(char c) {
+            if (c < 128) {
+                return asciiMasks[c];
+            }
+            int i = Arrays.binarySearch(otherChars, c);
+            return i >= 0 ? otherMasks[i] : 0;
+        }
+    }
+}
@@ -1,22 +1,101 @@
 package tpv.fxcontrol;
 
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
 
+/**
+ * Matches the elements of a source list against a filter string. Every
+ * element has a search key, its {@link #setKeyExtractor key extractor} text
+ * normalized for case-insensitive matching, which is computed once when the
+ * element enters the source and dropped when it leaves; matching tests the
+ * {@link FilterMatcher.Query query} the {@link #setMatcher matcher} prepared
+ * from the filter against these keys, or against the candidates of an
+ * optional {@link TrigramIndex trigram index}.
+ * <p>
+ * Small sources are matched on the calling thread; sources of at least
+ * {@link #PARALLEL_THRESHOLD} elements are split into chunks which are matched
+ * on a fork-join pool, and the result is handed to the publisher on the FX
+ * application thread in one piece. Each query supersedes the previous one, so
+ * a query still running when the next keystroke arrives stops early and its
+ * result is dropped.
+ * <p>
+ * Keys are computed on the thread which changes the source, so parallel
+ * matching never calls into the elements.
+ */
 final class FilterMediator<E> {
 
+    /** Sources with fewer elements are filtered on the calling thread. */
+    static final int PARALLEL_THRESHOLD = 20_000;
+
+    // the number of elements one fork-join leaf task matches
+    private static final int CHUNK_SIZE = 4096;
+
     private final ObjectProperty<ObservableList<E>> source = new SimpleObjectProperty<>();
-    FilterMediator(){
-        source.set(FXCollections.observableArrayList());
 
+    // the normalized search key of every source element, in source order
+    private final List<String> keys = new ArrayList<>();
+    private final ListChangeListener<E> sourceListener = this::updateKeys;
+
+    private Function<? super E, String> keyExtractor = String::valueOf;
+    private Locale locale = Locale.getDefault();
+    private final UnaryOperator<String> normalizer = this::normalize;
+
+    private FilterMatcher matcher = FilterMatcher.contains();
+
+    // the optional trigram index over the keys
+    private TrigramIndex index;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // incremented for every query, a task of an older generation is stale
+    private final AtomicLong generation = new AtomicLong();
+
+    // incremented for every change of the keys
+    private long modCount;
+
+    // the last completed query, its matches as source positions and the
+    // modification count of the keys it was matched against
+    private FilterMatcher.Query lastQuery;
+    private int[] lastMatches;
+    private long lastModCount;
+
+    // the keys and elements the pool threads match against, shared by every
+    // parallel query until the source changes; neither array is written once
+    // it is taken, so a running query can keep using it after a change
+    private String[] keySnapshot;
+    private Object[] elementSnapshot;
+
+    FilterMediator(){
+        this(FXCollections.observableArrayList());
     }
 
     FilterMediator(final ObservableList<E> source) {
+        this.source.addListener((observable, oldValue, newValue) -> {
+            if (oldValue != null) {
+                oldValue.removeListener(sourceListener);
+            }
+            if (newValue != null) {
+                newValue.addListener(sourceListener);
+            }
+            rebuildKeys();
+        });
         this.source.set(source);
     }
 
@@ -32,30 +111,554 @@ final class FilterMediator<E> {
         return source;
     }
 
+    /**
+     * Sets the function which gives the text an element is matched by,
+     * {@code toString()} by default, and recomputes every key.
+     */
+    void setKeyExtractor(Function<? super E, String> keyExtractor) {
+        this.keyExtractor = keyExtractor == null ? String::valueOf : keyExtractor;
+        rebuildKeys();
+    }
+
+    /**
+     * Sets the locale keys and queries are case-folded in, the default locale
+     * by default, and recomputes every key.
+     */
+    void setLocale(Locale locale) {
+        this.locale = locale == null ? Locale.getDefault() : locale;
+        rebuildKeys();
+    }
+
+    /**
+     * Sets how the keys are indexed, without an index by default. The index
+     * is built right away and then kept up to date as the source changes.
+     */
+    void setIndex(FilterIndex format) {
+        if (format == null || format == FilterIndex.NONE) {
+            index = null;
+        } else {
+            index = new TrigramIndex(format);
+            index.rebuild(keys);
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap used by the index in bytes, or 0 if
+     * there is no index.
+     */
+    long getIndexMemoryUsage() {
+        return index == null ? 0 : index.memoryUsage();
+    }
+
+    /**
+     * Sets the matcher which decides which elements a filter selects,
+     * {@link FilterMatcher#contains()} by default.
+     */
+    void setMatcher(FilterMatcher matcher) {
+        this.matcher = matcher == null ? FilterMatcher.contains() : matcher;
+        lastQuery = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Sets the pool large sources are matched on, the common pool by default.
+     */
+    void setPool(ForkJoinPool pool) {
+        this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+    }
+
     final List<E> filter(String s) {
+        if (s == null || s.isEmpty()) {
+            lastQuery = null;
+            lastMatches = null;
+            return new ArrayList<>(getSource());
+        }
+
+        FilterMatcher.Query query = matcher.prepare(s, normalizer);
+        int[] matches = match(query, candidatesFor(query));
+        remember(query, matches, modCount);
+        return elementsAt(matches, getSource()::get);
+    }
+
+    /**
+     * Filters the source and hands the matching elements to the publisher,
+     * see {@link #filterResult(String, Consumer)}.
+     */
+    final void filter(String s, Consumer<List<E>> publisher) {
+        filterResult(s, result -> publisher.accept(result.getItems()));
+    }
+
+    /**
+     * Filters the source and hands the matches to the publisher. Empty
+     * queries and small scans are published before this method returns;
+     * large scans are matched in parallel and published later on the FX
+     * application thread, unless another query was started or
+     * {@link #cancel()} was called in the meantime.
+     * <p>
+     * A query which refines the last completed one, on an unchanged source,
+     * only re-tests the previous matches, so typing costs about the size of
+     * the current result.
+     */
+    final void filterResult(String s, Consumer<Result<E>> publisher) {
         if (s == null) {
             s = "";
         }
 
-        return doFilter(s);
+        long id = generation.incrementAndGet();
+        List<E> elements = getSource();
+        if (s.isEmpty()) {
+            lastQuery = null;
+            lastMatches = null;
+            int[] all = new int[elements.size()];
+            Arrays.setAll(all, i -> i);
+            publisher.accept(new Result<>(new ArrayList<>(elements), all, modCount));
+            return;
+        }
+
+        FilterMatcher.Query query = matcher.prepare(s, normalizer);
+        int[] candidates = candidatesFor(query);
+        int scanSize = candidates == null ? keys.size() : candidates.length;
+        if (scanSize < PARALLEL_THRESHOLD) {
+            int[] matches = match(query, candidates);
+            remember(query, matches, modCount);
+            publisher.accept(new Result<>(elementsAt(matches, elements::get), matches, modCount));
+            return;
+        }
+
+        // the pool threads work on a snapshot, the source is not thread-safe
+        takeSnapshot();
+        Object[] snapshot = elementSnapshot;
+        String[] keySnapshot = this.keySnapshot;
+        long snapshotModCount = modCount;
+        pool.execute(() -> {
+            int[] matches = matchParallel(keySnapshot, candidates, query, id);
+            if (matches != null) {
+                @SuppressWarnings("unchecked")
+                List<E> result = elementsAt(matches, i -> (E) snapshot[i]);
+                Platform.runLater(() -> {
+                    if (generation.get() == id) {
+                        remember(query, matches, snapshotModCount);
+                        publisher.accept(new Result<>(result, matches, snapshotModCount));
+                    }
+                });
+            }
+        });
     }
 
-    private boolean isMatch(E e, String filter) {
-        return e.toString().toUpperCase().contains(filter.toUpperCase());
+    /**
+     * Filters the source and hands at most {@code limit} of the best scored
+     * matches to the publisher, best first, see
+     * {@link FilterMatcher.Query#score}. Matches are kept in a bounded heap
+     * while they are found, so neither the full result is materialized nor
+     * sorted. An empty query publishes the first {@code limit} elements.
+     * Like {@link #filterResult}, large scans are ranked in parallel and
+     * published later.
+     */
+    final void filterTop(String s, int limit, Consumer<List<E>> publisher) {
+        long id = generation.incrementAndGet();
+        List<E> elements = getSource();
+        if (s == null || s.isEmpty()) {
+            publisher.accept(new ArrayList<>(elements.subList(0, Math.min(limit, elements.size()))));
+            return;
+        }
+
+        FilterMatcher.Query query = matcher.prepare(s, normalizer);
+        int[] candidates = candidatesFor(query);
+        int scanSize = candidates == null ? keys.size() : candidates.length;
+        if (scanSize < PARALLEL_THRESHOLD) {
+            TopK top = new TopK(limit);
+            for (int j = 0; j < scanSize; j++) {
+                int i = candidates == null ? j : candidates[j];
+                int score = query.score(keys.get(i));
+                if (score != FilterMatcher.Query.NO_MATCH) {
+                    top.offer(score, i);
+                }
+            }
+            publisher.accept(elementsAt(top.positions(), elements::get));
+            return;
+        }
+
+        takeSnapshot();
+        Object[] snapshot = elementSnapshot;
+        String[] keySnapshot = this.keySnapshot;
+        pool.execute(() -> {
+            int chunkCount = (scanSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            TopK[] chunks = new TopK[chunkCount];
+            new RankTask(keySnapshot, candidates, scanSize, query, limit, id, chunks, 0, chunkCount).invoke();
+            if (generation.get() != id) {
+                return;
+            }
+
+            TopK top = new TopK(limit);
+            for (TopK chunk : chunks) {
+                top.addAll(chunk);
+            }
+            @SuppressWarnings("unchecked")
+            List<E> result = elementsAt(top.positions(), i -> (E) snapshot[i]);
+            Platform.runLater(() -> {
+                if (generation.get() == id) {
+                    publisher.accept(result);
+                }
+            });
+        });
     }
 
-    private List<E> doFilter(String filter) {
-        List<E> filters = new ArrayList<>();
+    /**
+     * Returns the ascending positions of the source elements in [from, to)
+     * which match the filter, on the calling thread. Used to test just the
+     * elements a source change added, instead of filtering the whole source.
+     */
+    final int[] matchRange(String s, int from, int to) {
+        int[] range = new int[to - from];
+        Arrays.setAll(range, i -> from + i);
+        return matchPositions(s, range);
+    }
+
+    /**
+     * Returns the positions among the given ascending ones whose source
+     * elements match the filter, on the calling thread.
+     */
+    final int[] matchPositions(String s, int[] positions) {
+        if (s == null || s.isEmpty()) {
+            return positions;
+        }
+        return match(matcher.prepare(s, normalizer), positions);
+    }
+
+    /**
+     * Returns the modification count of the keys, which changes whenever
+     * the source changes. Source positions are only comparable between
+     * results of the same modification count.
+     */
+    final long getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Drops the result of the query in progress, if any.
+     */
+    final void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toUpperCase(locale);
+    }
+
+    private String keyOf(E e) {
+        return normalize(String.valueOf(keyExtractor.apply(e)));
+    }
+
+    // copies the keys and elements for the pool threads, unless they did not
+    // change since the last copy
+    private void takeSnapshot() {
+        if (keySnapshot == null) {
+            keySnapshot = keys.toArray(new String[0]);
+            elementSnapshot = getSource().toArray();
+        }
+    }
 
-        for (E o : getSource()) {
-            if (isMatch(o, filter)) {
-                filters.add(o);
+    private void rebuildKeys() {
+        modCount++;
+        keySnapshot = null;
+        elementSnapshot = null;
+        keys.clear();
+        List<E> elements = getSource();
+        if (elements != null) {
+            for (E e : elements) {
+                keys.add(keyOf(e));
             }
         }
+        if (index != null) {
+            index.rebuild(keys);
+        }
+    }
+
+    private void updateKeys(ListChangeListener.Change<? extends E> c) {
+        modCount++;
+        keySnapshot = null;
+        elementSnapshot = null;
+        while (c.next()) {
+            int from = c.getFrom();
+            if (c.wasPermutated()) {
+                int[] permutation = new int[c.getTo() - from];
+                List<String> moved = new ArrayList<>(keys.subList(from, c.getTo()));
+                for (int i = from; i < c.getTo(); i++) {
+                    permutation[i - from] = c.getPermutation(i);
+                    keys.set(c.getPermutation(i), moved.get(i - from));
+                }
+                if (index != null) {
+                    index.permute(from, c.getTo(), permutation);
+                }
+            } else if (c.wasUpdated()) {
+                List<String> updated = new ArrayList<>(c.getTo() - from);
+                for (int i = from; i < c.getTo(); i++) {
+                    updated.add(keyOf(c.getList().get(i)));
+                }
+                if (index != null) {
+                    index.remove(from, keys.subList(from, c.getTo()));
+                    index.insert(from, updated);
+                }
+                for (int i = from; i < c.getTo(); i++) {
+                    keys.set(i, updated.get(i - from));
+                }
+            } else {
+                if (c.wasRemoved()) {
+                    List<String> removed = keys.subList(from, from + c.getRemovedSize());
+                    if (index != null) {
+                        index.remove(from, removed);
+                    }
+                    removed.clear();
+                }
+                if (c.wasAdded()) {
+                    List<String> added = new ArrayList<>(c.getAddedSize());
+                    for (E e : c.getAddedSubList()) {
+                        added.add(keyOf(e));
+                    }
+                    if (index != null) {
+                        index.insert(from, added);
+                    }
+                    keys.addAll(from, added);
+                }
+            }
+        }
+        if (index != null && index.needsCompaction()) {
+            index.rebuild(keys);
+        }
+    }
+
+    // the previous matches if the query refines the last one and the source
+    // did not change since, else the index candidates if there is an index
+    // and the query has substrings long enough to use it, or null if every
+    // key has to be scanned
+    private int[] candidatesFor(FilterMatcher.Query query) {
+        if (lastQuery != null && lastModCount == modCount && query.refines(lastQuery)) {
+            return lastMatches;
+        }
+        String[] required = index == null ? null : query.requiredSubstrings();
+        if (required == null) {
+            return null;
+        }
 
-        return filters;
+        int[] candidates = null;
+        for (String substring : required) {
+            int[] next = index.candidates(substring);
+            if (next != null) {
+                candidates = candidates == null ? next : intersect(candidates, next);
+            }
+        }
+        return candidates;
+    }
 
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void remember(FilterMatcher.Query query, int[] matches, long sourceModCount) {
+        lastQuery = query;
+        lastMatches = matches;
+        lastModCount = sourceModCount;
+    }
+
+    private List<E> elementsAt(int[] positions, IntFunction<E> element) {
+        List<E> elements = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            elements.add(element.apply(position));
+        }
+        return elements;
+    }
+
+    // returns the positions of the matching keys among the candidates, or
+    // among all keys if there are no candidates
+    private int[] match(FilterMatcher.Query query, int[] candidates) {
+        int size = candidates == null ? keys.size() : candidates.length;
+        int[] matches = new int[Math.min(size, 16)];
+        int count = 0;
+        for (int j = 0; j < size; j++) {
+            int i = candidates == null ? j : candidates[j];
+            if (query.matches(keys.get(i))) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = i;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    // returns null if the query was superseded while it ran
+    private int[] matchParallel(String[] keys, int[] candidates, FilterMatcher.Query query, long id) {
+        int size = candidates == null ? keys.length : candidates.length;
+        int chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[][] chunks = new int[chunkCount][];
+
+        new MatchTask(keys, candidates, size, query, id, chunks, 0, chunkCount).invoke();
+        if (generation.get() != id) {
+            return null;
+        }
+
+        int count = 0;
+        for (int[] chunk : chunks) {
+            count += chunk.length;
+        }
+        int[] matches = new int[count];
+        int offset = 0;
+        for (int[] chunk : chunks) {
+            System.arraycopy(chunk, 0, matches, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return matches;
     }
 
+    /**
+     * The matches of a query: the matching elements, their ascending
+     * positions in the source and the modification count of the source those
+     * positions refer to.
+     */
+    static final class Result<E> {
+        private final List<E> items;
+        private final int[] positions;
+        private final long modCount;
 
+        Result(List<E> items, int[] positions, long modCount) {
+            this.items = items;
+            this.positions = positions;
+            this.modCount = modCount;
+        }
+
+        List<E> getItems() {
+            return items;
+        }
+
+        int[] getPositions() {
+            return positions;
+        }
+
+        long getModCount() {
+            return modCount;
+        }
+    }
+
+    /*
+     * Ranks the chunks [fromChunk, toChunk) like MatchTask matches them, each
+     * chunk into its own bounded heap, which are merged once all are done.
+     */
+    private final class RankTask extends RecursiveAction {
+        private final String[] keys;
+        private final int[] candidates;
+        private final int size;
+        private final FilterMatcher.Query query;
+        private final int limit;
+        private final long id;
+        private final TopK[] chunks;
+        private final int fromChunk;
+        private final int toChunk;
+
+        RankTask(String[] keys, int[] candidates, int size, FilterMatcher.Query query, int limit, long id,
+                 TopK[] chunks, int fromChunk, int toChunk) {
+            this.keys = keys;
+            this.candidates = candidates;
+            this.size = size;
+            this.query = query;
+            this.limit = limit;
+            this.id = id;
+            this.chunks = chunks;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (generation.get() != id) {
+                return;
+            }
+
+            if (toChunk - fromChunk > 1) {
+                int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new RankTask(keys, candidates, size, query, limit, id, chunks, fromChunk, mid),
+                        new RankTask(keys, candidates, size, query, limit, id, chunks, mid, toChunk));
+                return;
+            }
+
+            int from = fromChunk * CHUNK_SIZE;
+            int to = Math.min(size, from + CHUNK_SIZE);
+            TopK top = new TopK(limit);
+            for (int j = from; j < to; j++) {
+                int i = candidates == null ? j : candidates[j];
+                int score = query.score(keys[i]);
+                if (score != FilterMatcher.Query.NO_MATCH) {
+                    top.offer(score, i);
+                }
+            }
+            chunks[fromChunk] = top;
+        }
+    }
+
+    /*
+     * Matches the chunks [fromChunk, toChunk) of the keys, or of the candidate
+     * positions if there are any, writing the matching positions of every
+     * chunk to its own slot so they can be joined in source order without
+     * copying at every level of the split.
+     */
+    private final class MatchTask extends RecursiveAction {
+        private final String[] keys;
+        private final int[] candidates;
+        private final int size;
+        private final FilterMatcher.Query query;
+        private final long id;
+        private final int[][] chunks;
+        private final int fromChunk;
+        private final int toChunk;
+
+        MatchTask(String[] keys, int[] candidates, int size, FilterMatcher.Query query, long id,
+                  int[][] chunks, int fromChunk, int toChunk) {
+            this.keys = keys;
+            this.candidates = candidates;
+            this.size = size;
+            this.query = query;
+            this.id = id;
+            this.chunks = chunks;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (generation.get() != id) {
+                return;
+            }
+
+            if (toChunk - fromChunk > 1) {
+                int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new MatchTask(keys, candidates, size, query, id, chunks, fromChunk, mid),
+                        new MatchTask(keys, candidates, size, query, id, chunks, mid, toChunk));
+                return;
+            }
+
+            int from = fromChunk * CHUNK_SIZE;
+            int to = Math.min(size, from + CHUNK_SIZE);
+            int[] matches = new int[to - from];
+            int count = 0;
+            for (int j = from; j < to; j++) {
+                int i = candidates == null ? j : candidates[j];
+                if (query.matches(keys[i])) {
+                    matches[count++] = i;
+                }
+            }
+            chunks[fromChunk] = Arrays.copyOf(matches, count);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package tpv.fxcontrol;
 
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.StringProperty;
 
 interface Filterable {
@@ -12,6 +13,20 @@ interface Filterable {
         filterProperty().set(filter);
     }
 
+    /**
+     * When changes of the filter text are evaluated,
+     * {@link FilterDebounce#IMMEDIATE} by default.
+     */
+    ObjectProperty<FilterDebounce> filterDebounceProperty();
+
+    default FilterDebounce getFilterDebounce() {
+        return filterDebounceProperty().get();
+    }
+
+    default void setFilterDebounce(FilterDebounce debounce) {
+        filterDebounceProperty().set(debounce);
+    }
+
 
 
 }
@@ -0,0 +1,398 @@
+package tpv.fxcontrol;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the items of a list or table control in step with the results of a
+ * {@link FilterMediator}. The items are remembered as source positions, so a
+ * new result is applied as the few removed and added ranges a sorted merge of
+ * the old and new positions finds, instead of replacing every item. Selection
+ * and scroll position survive, and cells are only updated where the result
+ * changed.
+ * <p>
+ * The items also follow changes of the source as they happen: only the added
+ * elements are tested against the current filter and only the removed ones
+ * are dropped, so adding an item to a large source does not filter it again.
+ * Permutations, and changes arriving while the items are out of step with the
+ * source, filter the whole source again, as does every change when only the
+ * best scored matches are shown.
+ * <p>
+ * A result matched in parallel refers to the source as it was when the
+ * filter started. Source changes made while it is in flight are recorded and
+ * replayed onto it when it arrives, so a busy source does not make the
+ * filter start over again and again.
+ * <p>
+ * This class is package private, it is used by {@link ListViewFilterable} and
+ * {@link TableViewFilterable}.
+ */
+final class FilteredItems<E> {
+
+    // beyond this many ranges one replace is cheaper than the separate changes
+    private static final int MAX_DIFF_RANGES = 64;
+
+    private final FilterMediator<E> mediator;
+    private final Supplier<ObservableList<E>> target;
+    private final ListChangeListener<E> sourceListener = this::sourceChanged;
+
+    // the filter last requested, whose result may still be in flight
+    private String filter;
+
+    // the filter the positions belong to
+    private String appliedFilter;
+
+    // whether the result of the last requested filter is still to come, and
+    // the source changes made since it was requested
+    private boolean pending;
+    private final List<Edit> missed = new ArrayList<>();
+
+    // show only this many best scored matches, best first, if positive
+    private int limit;
+
+    // the source positions of the items and the source modification count
+    // they refer to, or null if the items were not set by this class
+    private int[] positions;
+    private long modCount;
+
+    FilteredItems(FilterMediator<E> mediator, Supplier<ObservableList<E>> target) {
+        this.mediator = mediator;
+        this.target = target;
+
+        // added after the listener of the mediator, so the keys of a change
+        // are up to date when it gets here
+        mediator.sourceProperty().addListener((observable, oldValue, newValue) -> {
+            if (oldValue != null) {
+                oldValue.removeListener(sourceListener);
+            }
+            if (newValue != null) {
+                newValue.addListener(sourceListener);
+            }
+        });
+        if (mediator.getSource() != null) {
+            mediator.getSource().addListener(sourceListener);
+        }
+    }
+
+    /**
+     * Filters the source and applies the result to the items once it is
+     * published.
+     */
+    void filter(String filter) {
+        this.filter = filter;
+        pending = true;
+        missed.clear();
+        if (limit > 0) {
+            // ranked items are not in source order, they cannot be diffed or
+            // follow source changes by position
+            positions = null;
+            mediator.filterTop(filter, limit, this::applyTop);
+        } else {
+            mediator.filterResult(filter, this::apply);
+        }
+    }
+
+    /**
+     * Drops the result of the filter in progress, if any. Until the next
+     * filter the items follow the source with the filter they were filtered
+     * with, and a change they cannot follow filters the source again at once
+     * instead of waiting for the dropped result.
+     */
+    void cancel() {
+        mediator.cancel();
+        pending = false;
+        missed.clear();
+    }
+
+    /**
+     * Sets how many of the best scored matches are shown, or 0 to show every
+     * match in source order. Takes effect with the next filter.
+     */
+    void setLimit(int limit) {
+        this.limit = Math.max(0, limit);
+    }
+
+    void apply(FilterMediator.Result<E> result) {
+        pending = false;
+        int[] newPositions = result.getPositions();
+        List<E> newItems = result.getItems();
+
+        if (result.getModCount() != mediator.getModCount()) {
+            // matched against a snapshot the source has changed since
+            newPositions = catchUp(newPositions, result.getModCount());
+            if (newPositions == null) {
+                // the keys were recomputed, not changed by the source
+                filter(filter);
+                return;
+            }
+            List<E> source = mediator.getSource();
+            newItems = new ArrayList<>(newPositions.length);
+            for (int position : newPositions) {
+                newItems.add(source.get(position));
+            }
+        }
+        missed.clear();
+
+        ObservableList<E> items = target.get();
+        if (positions == null || modCount != mediator.getModCount() || positions.length != items.size()
+                || countRanges(positions, newPositions) > MAX_DIFF_RANGES) {
+            items.setAll(newItems);
+        } else {
+            applyDiff(items, positions, newPositions, newItems);
+        }
+
+        positions = newPositions;
+        modCount = mediator.getModCount();
+        appliedFilter = filter;
+    }
+
+    private void applyTop(List<E> top) {
+        pending = false;
+        target.get().setAll(top);
+        if (!missed.isEmpty()) {
+            // the source changed while it was ranked; it is shown anyway, so
+            // a busy source cannot keep every ranking from showing
+            filter(filter);
+        }
+    }
+
+    private void sourceChanged(ListChangeListener.Change<? extends E> c) {
+        if (pending) {
+            record(c);
+            c.reset();
+        }
+
+        ObservableList<E> items = target.get();
+        // the mediator counts one modification per change, anything else means
+        // the positions missed a change or the keys were recomputed
+        if (positions == null || positions.length != items.size() || modCount + 1 != mediator.getModCount()) {
+            refilter();
+            return;
+        }
+
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                refilter();
+                return;
+            }
+            int from = c.getFrom();
+            int removedTo = c.wasUpdated() ? c.getTo() : from + c.getRemovedSize();
+            replace(items, c.getList(), from, removedTo, c.getTo(), c.wasUpdated());
+        }
+        modCount = mediator.getModCount();
+    }
+
+    // filters the whole source again, unless a result is in flight, which
+    // catches up with the change when it arrives
+    private void refilter() {
+        positions = null;
+        if (!pending) {
+            filter(filter);
+        }
+    }
+
+    private void record(ListChangeListener.Change<? extends E> c) {
+        long changeModCount = mediator.getModCount();
+        while (c.next()) {
+            int from = c.getFrom();
+            if (c.wasPermutated()) {
+                int[] permutation = new int[c.getTo() - from];
+                for (int i = from; i < c.getTo(); i++) {
+                    permutation[i - from] = c.getPermutation(i);
+                }
+                missed.add(new Edit(changeModCount, from, c.getTo(), c.getTo(), permutation));
+            } else {
+                int removedTo = c.wasUpdated() ? c.getTo() : from + c.getRemovedSize();
+                missed.add(new Edit(changeModCount, from, removedTo, c.getTo(), null));
+            }
+        }
+    }
+
+    // moves the positions of a result over the source changes recorded since
+    // the modification count it was matched at, and tests the elements those
+    // changes added or updated against the filter; null if not every change
+    // in between was recorded
+    private int[] catchUp(int[] matches, long resultModCount) {
+        int[] added = new int[0];
+        long last = resultModCount;
+        for (Edit edit : missed) {
+            if (edit.modCount <= resultModCount) {
+                continue;
+            }
+            if (edit.modCount > last + 1) {
+                return null;
+            }
+            last = edit.modCount;
+            if (edit.permutation != null) {
+                matches = permute(matches, edit.from, edit.permutation);
+                added = permute(added, edit.from, edit.permutation);
+            } else {
+                int delta = edit.addedTo - edit.removedTo;
+                int[] range = new int[edit.addedTo - edit.from];
+                Arrays.setAll(range, i -> edit.from + i);
+                matches = splice(matches, lowerBound(matches, edit.from), lowerBound(matches, edit.removedTo),
+                        new int[0], delta);
+                added = splice(added, lowerBound(added, edit.from), lowerBound(added, edit.removedTo),
+                        range, delta);
+            }
+        }
+        if (last != mediator.getModCount()) {
+            return null;
+        }
+        return merge(matches, mediator.matchPositions(filter, added));
+    }
+
+    // applies the replacement of the source elements [from, removedTo) by the
+    // elements now at [from, addedTo): drops the shown removed elements, shows
+    // the added elements which match and shifts the positions after them
+    private void replace(ObservableList<E> items, List<? extends E> source, int from, int removedTo, int addedTo,
+                         boolean updated) {
+        int lo = lowerBound(positions, from);
+        int hi = lowerBound(positions, removedTo);
+        int[] added = mediator.matchRange(appliedFilter, from, addedTo);
+
+        if (updated && Arrays.equals(positions, lo, hi, added, 0, added.length)) {
+            // an update which did not change what is shown
+            return;
+        }
+
+        positions = splice(positions, lo, hi, added, addedTo - removedTo);
+
+        if (hi > lo) {
+            items.remove(lo, hi);
+        }
+        if (added.length > 0) {
+            List<E> addedItems = new ArrayList<>(added.length);
+            for (int position : added) {
+                addedItems.add(source.get(position));
+            }
+            items.addAll(lo, addedItems);
+        }
+    }
+
+    // replaces the positions [lo, hi) by the inserted ones and shifts the
+    // positions after them by delta
+    private static int[] splice(int[] positions, int lo, int hi, int[] inserted, int delta) {
+        int[] result = new int[positions.length - (hi - lo) + inserted.length];
+        System.arraycopy(positions, 0, result, 0, lo);
+        System.arraycopy(inserted, 0, result, lo, inserted.length);
+        for (int i = hi, j = lo + inserted.length; i < positions.length; i++, j++) {
+            result[j] = positions[i] + delta;
+        }
+        return result;
+    }
+
+    // moves the positions in [from, from + permutation.length) to where the
+    // permutation puts them
+    private static int[] permute(int[] positions, int from, int[] permutation) {
+        int[] result = positions.clone();
+        for (int i = 0; i < result.length; i++) {
+            int offset = result[i] - from;
+            if (offset >= 0 && offset < permutation.length) {
+                result[i] = permutation[offset];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // the union of two disjoint ascending position arrays
+    private static int[] merge(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            result[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        System.arraycopy(a, i, result, k, a.length - i);
+        System.arraycopy(b, j, result, k + a.length - i, b.length - j);
+        return result;
+    }
+
+    // the index of the first position not less than the given one
+    private static int lowerBound(int[] positions, int position) {
+        int i = Arrays.binarySearch(positions, position);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    // walks both ascending position arrays, removing the runs of old positions
+    // missing from the new ones and inserting the runs of new positions
+    private static <E> void applyDiff(ObservableList<E> items, int[] oldPositions, int[] newPositions, List<E> newItems) {
+        int index = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldPositions.length || j < newPositions.length) {
+            if (i < oldPositions.length && j < newPositions.length && oldPositions[i] == newPositions[j]) {
+                index++;
+                i++;
+                j++;
+            } else if (j == newPositions.length || (i < oldPositions.length && oldPositions[i] < newPositions[j])) {
+                int start = i;
+                while (i < oldPositions.length && (j == newPositions.length || oldPositions[i] < newPositions[j])) {
+                    i++;
+                }
+                items.remove(index, index + i - start);
+            } else {
+                int start = j;
+                while (j < newPositions.length && (i == oldPositions.length || newPositions[j] < oldPositions[i])) {
+                    j++;
+                }
+                items.addAll(index, newItems.subList(start, j));
+                index += j - start;
+            }
+        }
+    }
+
+    // the number of removed and added runs applyDiff would apply
+    private static int countRanges(int[] oldPositions, int[] newPositions) {
+        int ranges = 0;
+        int i = 0;
+        int j = 0;
+        int last = 0;
+        while (i < oldPositions.length || j < newPositions.length) {
+            int kind;
+            if (i < oldPositions.length && j < newPositions.length && oldPositions[i] == newPositions[j]) {
+                kind = 0;
+                i++;
+                j++;
+            } else if (j == newPositions.length || (i < oldPositions.length && oldPositions[i] < newPositions[j])) {
+                kind = 1;
+                i++;
+            } else {
+                kind = 2;
+                j++;
+            }
+            if (kind != 0 && kind != last && ++ranges > MAX_DIFF_RANGES) {
+                break;
+            }
+            last = kind;
+        }
+        return ranges;
+    }
+
+    /*
+     * A source change recorded while a result was in flight: the elements
+     * [from, removedTo) were replaced by [from, addedTo), or, with a
+     * permutation, moved within [from, removedTo).
+     */
+    private static final class Edit {
+        final long modCount;
+        final int from;
+        final int removedTo;
+        final int addedTo;
+        final int[] permutation;
+
+        Edit(long modCount, int from, int removedTo, int addedTo, int[] permutation) {
+            this.modCount = modCount;
+            this.from = from;
+            this.removedTo = removedTo;
+            this.addedTo = addedTo;
+            this.permutation = permutation;
+        }
+    }
+}
@@ -5,8 +5,10 @@ package tpv.fxcontrol;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.scene.Node;
@@ -16,7 +18,13 @@ import javafx.scene.layout.FlowPane;
 public class FlowViewFilterable<E> extends ScrollPane implements Filterable {
     private final FilterMediator<E> mediator = new FilterMediator();
     private final FlowPane flowPane;
-    private final StringProperty filter = new SimpleStringProperty();
+    private final FilterDebouncer debouncer = new FilterDebouncer(this::applyFilter, this.mediator::cancel);
+    private final StringProperty filter = new SimpleStringProperty() {
+        @Override
+        protected void invalidated() {
+            FlowViewFilterable.this.debouncer.request();
+        }
+    };
     private DataViewConverter<E, Node> converter;
 
     public FlowViewFilterable(double hgap, double vgap) {
@@ -38,15 +46,39 @@ public class FlowViewFilterable<E> extends ScrollPane implements Filterable {
         this.converter = converter;
     }
 
+    public final void setKeyExtractor(Function<? super E, String> keyExtractor) {
+        this.mediator.setKeyExtractor(keyExtractor);
+        this.reFilter();
+    }
+
+    public final void setFilterMatcher(FilterMatcher matcher) {
+        this.mediator.setMatcher(matcher);
+        this.reFilter();
+    }
+
     public final StringProperty filterProperty() {
         return this.filter;
     }
 
+    public final ObjectProperty<FilterDebounce> filterDebounceProperty() {
+        return this.debouncer.policyProperty();
+    }
+
+    private void applyFilter() {
+        String filter = this.filter.get();
+        if (filter == null || filter.isEmpty()) {
+            this.reset();
+        } else {
+            this.doFilter(filter);
+        }
+    }
+
     public final List<E> getFilteredItems() {
         return this.revertList(this.flowPane.getChildren());
     }
 
     private void reset() {
+        this.mediator.cancel();
         this.convertAndSetAll(this.mediator.getSource());
     }
 
@@ -76,11 +108,11 @@ public class FlowViewFilterable<E> extends ScrollPane implements Filterable {
     }
 
     private void reFilter() {
-        this.convertAndSetAll(this.mediator.filter((String)this.filter.get()));
+        this.mediator.filter((String)this.filter.get(), this::convertAndSetAll);
     }
 
     private void doFilter(String filter) {
-        this.convertAndSetAll(this.mediator.filter(filter));
+        this.mediator.filter(filter, this::convertAndSetAll);
     }
 
     public final void clear() {
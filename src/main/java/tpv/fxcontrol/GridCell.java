@@ -26,6 +26,7 @@
  */
 package tpv.fxcontrol;
 
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.WeakInvalidationListener;
@@ -38,11 +39,17 @@ import javafx.collections.ObservableList;
 import javafx.collections.WeakListChangeListener;
 import javafx.css.PseudoClass;
 import javafx.scene.AccessibleRole;
+import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.util.Callback;
 import tpv.fxcontrol.skin.GridCellSkin;
 
 import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A GridCell is created to represent items in the {@link GridView}
@@ -78,25 +85,19 @@ public class GridCell<T> extends IndexedCell<T> {
 //            }
 //        });
 
-        // TODO listen for index change and update index and item, rather than
-        // listen to just item update as above. This requires the GridCell to
-        // know about its containing GridRow (and the GridRow to know its
-        // containing GridView)
-        indexProperty().addListener(new InvalidationListener() {
-            @Override public void invalidated(Observable observable) {
-                final GridView<T> gridView = getGridView();
-                if (gridView == null) return;
-
-                if(getIndex() < 0) {
-                    updateItem(null, true);
-                    return;
-                }
-                T item = gridView.getItems().get(getIndex());
+        // The item is updated from updateIndex(int), so that the old index is
+        // known and a cell that already shows the right item is not rendered again.
+    }
 
-//                updateIndex(getIndex());
-                updateItem(item, item == null);
-            }
-        });
+    /** {@inheritDoc} */
+    @Override public void updateIndex(int i) {
+        final int oldIndex = getIndex();
+        if (i != oldIndex) {
+            // the cell scrolled away from the index the graphic was requested for
+            cancelAsyncGraphic();
+        }
+        super.updateIndex(i);
+        updateItem(oldIndex);
     }
 
 
@@ -220,6 +221,8 @@ public class GridCell<T> extends IndexedCell<T> {
     private boolean firstRun = true;
     private void updateItem(int oldIndex) {
         final GridView<T> lv = getGridView();
+        if (lv == null) return;
+
         final List<T> items = lv == null ? null : lv.getItems();
         final int index = getIndex();
         final int itemCount = items == null ? -1 : items.size();
@@ -235,16 +238,23 @@ public class GridCell<T> extends IndexedCell<T> {
             final T newValue = items.get(index);
 
             // RT-35864 - if the index didn't change, then avoid calling updateItem
-            // unless the item has changed.
-            if (oldIndex == index) {
+            // unless the item has changed. This also covers a row re-indexed
+            // during a scroll pass without any change to this cell. Updates of
+            // the item itself (wasUpdated changes) come through the items
+            // listener as updateItem(-1), which always updates.
+            if (oldIndex == index && !isEmpty) {
                 if (!isItemChanged(oldValue, newValue)) {
                     // RT-37054:  we break out of the if/else code here and
                     // proceed with the code following this, so that we may
                     // still update references, listeners, etc as required.
+                    lv.cellUpdateSkipped();
                     break outer;
                 }
             }
+
             updateItem(newValue, false);
+            lv.cellUpdatePerformed();
+            requestAsyncGraphic(lv, index, newValue);
         } else {
             // RT-30484 We need to allow a first run to be special-cased to allow
             // for the updateItem method to be called at least once to allow for
@@ -252,12 +262,86 @@ public class GridCell<T> extends IndexedCell<T> {
             // refer to Ensemble8PopUpTree.png - in this case the arrows are being
             // shown as the new cells are instantiated with the arrows in the
             // children list, and are only hidden in updateItem.
+            cancelAsyncGraphic();
+            if (lv.getAsyncGraphicFactory() != null) {
+                // a recycled cell must not keep the graphic of its last item
+                setGraphic(null);
+            }
             if (!isEmpty || firstRun) {
                 updateItem(null, true);
                 firstRun = false;
+                lv.cellUpdatePerformed();
+            } else {
+                lv.cellUpdateSkipped();
+            }
+        }
+    }
+
+    private static final PseudoClass PSEUDO_CLASS_LOADING =
+            PseudoClass.getPseudoClass("loading"); //$NON-NLS-1$
+
+    // the graphic being rendered by GridView.asyncGraphicFactory for this cell
+    private Future<Node> asyncGraphic;
+
+    private void requestAsyncGraphic(GridView<T> gridView, int index, T item) {
+        cancelAsyncGraphic();
+        final Callback<T, Node> factory = gridView.getAsyncGraphicFactory();
+        if (factory == null) return;
+
+        setGraphic(null);
+        pseudoClassStateChanged(PSEUDO_CLASS_LOADING, true);
+
+        FutureTask<Node> task = new FutureTask<Node>(() -> factory.call(item)) {
+            @Override protected void done() {
+                final Future<Node> self = this;
+                if (isCancelled()) {
+                    // cancelAsyncGraphic() forgets the task, so a task which is
+                    // still current here was dropped by the executor, e.g. by a
+                    // full queue; the cell would stay blank, so ask again
+                    Platform.runLater(() -> {
+                        if (asyncGraphic != self) return;
+                        asyncGraphic = null;
+                        pseudoClassStateChanged(PSEUDO_CLASS_LOADING, false);
+                        if (getIndex() == index && getItem() == item) {
+                            requestAsyncGraphic(gridView, index, item);
+                        }
+                    });
+                    return;
+                }
+                Node graphic;
+                try {
+                    graphic = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    graphic = null;
+                }
+                final Node result = graphic;
+                Platform.runLater(() -> {
+                    // only apply the result if the cell still shows the same index
+                    if (asyncGraphic != self || getIndex() != index || getItem() != item) return;
+                    asyncGraphic = null;
+                    pseudoClassStateChanged(PSEUDO_CLASS_LOADING, false);
+                    setGraphic(result);
+                });
             }
+        };
+        asyncGraphic = task;
+        try {
+            gridView.getAsyncExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            // e.g. a shut down executor; the cell stays without a graphic
+            // until its item changes
+            asyncGraphic = null;
+            pseudoClassStateChanged(PSEUDO_CLASS_LOADING, false);
         }
     }
+
+    private void cancelAsyncGraphic() {
+        if (asyncGraphic == null) return;
+        asyncGraphic.cancel(true);
+        asyncGraphic = null;
+        pseudoClassStateChanged(PSEUDO_CLASS_LOADING, false);
+    }
+
     /* *************************************************************************
      *                                                                         *
      * Properties                                                              *
@@ -33,6 +33,7 @@ import javafx.beans.WeakInvalidationListener;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
@@ -52,8 +53,23 @@ import tpv.fxcontrol.skin.GridViewSkin;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A GridView is a virtualised control for displaying {@link #getItems()} in a
@@ -119,6 +135,10 @@ public class GridView<T> extends ControlsFXControl {
 
     private DoubleProperty verticalCellSpacing;
 
+    private long cellUpdates;
+
+    private long skippedCellUpdates;
+
     /**************************************************************************
      *
      * Constructors
@@ -181,6 +201,78 @@ public class GridView<T> extends ControlsFXControl {
         return selectionModel == null ? null : selectionModel.get();
     }
 
+    /**
+     * Runs the given selection edits, such as calls to select, clearSelection
+     * or selectIndices on the {@link #getSelectionModel() selection model}, as
+     * one batch. Listeners of the selected indices and selected items get a
+     * single change when the edits are done, with one sub-change per run of
+     * indices that was added or removed instead of one per edit. Batches may
+     * nest, the change is delivered when the outermost batch ends. Selection
+     * models other than the default one simply run the edits.
+     *
+     * @param edits the selection edits to run
+     */
+    public void runSelectionBatch(Runnable edits) {
+        MultipleSelectionModel<T> sm = getSelectionModel();
+        if (sm instanceof MultipleSelectionModelBase) {
+            ((MultipleSelectionModelBase<T>) sm).runBatch(edits);
+        } else {
+            edits.run();
+        }
+    }
+
+    /**
+     * Returns a stream of the selected indices in ascending order. The stream
+     * reads from a snapshot of the runs of selected indices, so it neither
+     * copies every index up front nor sees later selection changes.
+     *
+     * @param parallel whether the stream is parallel
+     * @return a stream of the selected indices
+     */
+    public IntStream selectedIndicesStream(boolean parallel) {
+        MultipleSelectionModel<T> sm = getSelectionModel();
+        if (sm == null) {
+            return IntStream.empty();
+        }
+        if (sm instanceof MultipleSelectionModelBase) {
+            return StreamSupport.intStream(((MultipleSelectionModelBase<T>) sm).selectedIndicesSpliterator(), parallel);
+        }
+        IntStream indices = sm.getSelectedIndices().stream().mapToInt(Integer::intValue);
+        return parallel ? indices.parallel() : indices;
+    }
+
+    /**
+     * Returns a spliterator over the selected items, in ascending index
+     * order, without materialising the selected items list. It covers a
+     * snapshot of the selected indices and reads each item from the
+     * {@link #getItems() items} as it advances, so the items must not change
+     * while it is in use. It splits evenly, which suits parallel export jobs
+     * over millions of selected items.
+     *
+     * @return a spliterator over the selected items
+     */
+    public Spliterator<T> selectedItemsSpliterator() {
+        MultipleSelectionModel<T> sm = getSelectionModel();
+        if (sm == null) {
+            return Spliterators.emptySpliterator();
+        }
+        if (sm instanceof MultipleSelectionModelBase) {
+            return ((MultipleSelectionModelBase<T>) sm).selectedItemsSpliterator();
+        }
+        return sm.getSelectedItems().spliterator();
+    }
+
+    /**
+     * Returns a stream of the selected items backed by
+     * {@link #selectedItemsSpliterator()}.
+     *
+     * @param parallel whether the stream is parallel
+     * @return a stream of the selected items
+     */
+    public Stream<T> selectedItemsStream(boolean parallel) {
+        return StreamSupport.stream(selectedItemsSpliterator(), parallel);
+    }
+
 
 
     /**************************************************************************
@@ -201,6 +293,32 @@ public class GridView<T> extends ControlsFXControl {
         return getUserAgentStylesheet(GridView.class, "gridview.css");
     }
 
+    /**
+     * Returns how many times a {@link GridCell} of this GridView had its
+     * {@code updateItem} method called because its index or item changed.
+     * @return The number of performed cell updates
+     */
+    public final long getCellUpdateCount() {
+        return cellUpdates;
+    }
+
+    /**
+     * Returns how many times a {@link GridCell} of this GridView did not call
+     * {@code updateItem} because it already showed the item at its index.
+     * @return The number of skipped cell updates
+     */
+    public final long getSkippedCellUpdateCount() {
+        return skippedCellUpdates;
+    }
+
+    void cellUpdatePerformed() {
+        cellUpdates++;
+    }
+
+    void cellUpdateSkipped() {
+        skippedCellUpdates++;
+    }
+
     /**************************************************************************
      *
      * Properties
@@ -373,6 +491,207 @@ public class GridView<T> extends ControlsFXControl {
     }
 
 
+    // --- cell height factory
+    /**
+     * Property representing the callback which returns the height of the cell
+     * showing a given item, or null if all cells are {@link #getCellHeight()}
+     * high. When set, the grid has per-row variable height: every row is as
+     * high as its tallest cell, and each cell is as high as its item requires,
+     * top aligned. Cells keep their width and column, and a row never takes
+     * cells from the next one, so items do not pack into the gaps the way a
+     * masonry layout does.
+     * The callback is called once for every item when the items or the
+     * callback are set, and for added and updated items afterwards; the
+     * heights are cached, so column count, cell height and spacing changes do
+     * not call it again.
+     */
+    public final ObjectProperty<Callback<T, Double>> cellHeightFactoryProperty() {
+        if (cellHeightFactory == null) {
+            cellHeightFactory = new SimpleObjectProperty<>(this, "cellHeightFactory"); //$NON-NLS-1$
+        }
+        return cellHeightFactory;
+    }
+    private ObjectProperty<Callback<T, Double>> cellHeightFactory;
+
+    /**
+     * Sets the callback which returns the height of the cell showing a given
+     * item, or null to give every cell the same height.
+     */
+    public final void setCellHeightFactory(Callback<T, Double> value) {
+        cellHeightFactoryProperty().set(value);
+    }
+
+    /**
+     * Returns the callback which returns the height of the cell showing a
+     * given item, or null if all cells have the same height.
+     */
+    public final Callback<T, Double> getCellHeightFactory() {
+        return cellHeightFactory == null ? null : cellHeightFactory.get();
+    }
+
+
+    // --- async graphic factory
+    /**
+     * Property representing the callback which renders the graphic of a cell
+     * on a background thread, or null to render cells synchronously. When set,
+     * a cell showing a new item gets the {@code :loading} pseudo-class and no
+     * graphic (the placeholder), while the callback runs on the
+     * {@link #getAsyncExecutor() async executor}. The returned node becomes the
+     * graphic of the cell on the FX application thread, but only if the cell
+     * still shows the same index. Work for cells which scrolled out of view is
+     * cancelled. The callback must not touch any node that is part of a scene.
+     */
+    public final ObjectProperty<Callback<T, Node>> asyncGraphicFactoryProperty() {
+        if (asyncGraphicFactory == null) {
+            asyncGraphicFactory = new SimpleObjectProperty<>(this, "asyncGraphicFactory"); //$NON-NLS-1$
+        }
+        return asyncGraphicFactory;
+    }
+    private ObjectProperty<Callback<T, Node>> asyncGraphicFactory;
+
+    /**
+     * Sets the callback which renders the graphic of a cell on a background
+     * thread, or null to render cells synchronously.
+     */
+    public final void setAsyncGraphicFactory(Callback<T, Node> value) {
+        asyncGraphicFactoryProperty().set(value);
+    }
+
+    /**
+     * Returns the callback which renders the graphic of a cell on a background
+     * thread, or null if cells are rendered synchronously.
+     */
+    public final Callback<T, Node> getAsyncGraphicFactory() {
+        return asyncGraphicFactory == null ? null : asyncGraphicFactory.get();
+    }
+
+    private ExecutorService asyncExecutor;
+
+    /**
+     * Sets the executor which runs the {@link #asyncGraphicFactoryProperty()
+     * async graphic factory}. The executor should be bounded, as one task is
+     * submitted per cell whose item changes.
+     * <p>
+     * The tasks are {@link Future futures}. An executor which drops a task it
+     * accepted, for example from a full queue, must cancel it, so that the
+     * cell asks for its graphic again; a task that is dropped silently leaves
+     * its cell in the {@code :loading} state. An executor may also refuse a
+     * task by throwing a {@link java.util.concurrent.RejectedExecutionException},
+     * the cell then shows no graphic until its item changes.
+     */
+    public final void setAsyncExecutor(ExecutorService executor) {
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * Returns the executor which runs the async graphic factory. By default
+     * this is a small pool of daemon threads, private to this GridView, which
+     * runs the most recently requested cells first and drops (cancels) the
+     * oldest requests once {@value #ASYNC_QUEUE_CAPACITY} are waiting.
+     */
+    public final ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = createDefaultAsyncExecutor();
+        }
+        return asyncExecutor;
+    }
+
+    private static final int ASYNC_QUEUE_CAPACITY = 1024;
+
+    private static ExecutorService createDefaultAsyncExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "GridView-async-" + threadCount.incrementAndGet()); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // LIFO queue: the cells requested last are the ones currently in view
+        BlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>(ASYNC_QUEUE_CAPACITY) {
+            @Override public boolean offer(Runnable runnable) {
+                return offerFirst(runnable);
+            }
+        };
+        RejectedExecutionHandler dropOldest = (runnable, executor) -> {
+            Runnable oldest = queue.pollLast();
+            if (oldest instanceof Future) {
+                ((Future<?>) oldest).cancel(false);
+            }
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("GridView async executor is shut down"); //$NON-NLS-1$
+            }
+            executor.execute(runnable);
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                queue, threadFactory, dropOldest);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    // --- prefetch
+    /**
+     * Property representing the handler which is told about the items just
+     * past the viewport in the scroll direction, or null if nothing should be
+     * prefetched. The handler is called on the FX application thread while the
+     * user scrolls, with items which have not been announced yet, so that a
+     * data layer can warm its caches before the cells ask for those items. It
+     * should return quickly and hand any slow work to another thread.
+     */
+    public final ObjectProperty<Consumer<List<T>>> prefetchHandlerProperty() {
+        if (prefetchHandler == null) {
+            prefetchHandler = new SimpleObjectProperty<>(this, "prefetchHandler"); //$NON-NLS-1$
+        }
+        return prefetchHandler;
+    }
+    private ObjectProperty<Consumer<List<T>>> prefetchHandler;
+
+    /**
+     * Sets the handler which is told about the items just past the viewport.
+     */
+    public final void setPrefetchHandler(Consumer<List<T>> value) {
+        prefetchHandlerProperty().set(value);
+    }
+
+    /**
+     * Returns the handler which is told about the items just past the
+     * viewport, or null if nothing is prefetched.
+     */
+    public final Consumer<List<T>> getPrefetchHandler() {
+        return prefetchHandler == null ? null : prefetchHandler.get();
+    }
+
+    /**
+     * Property representing how many rows past the viewport are announced to
+     * the {@link #prefetchHandlerProperty() prefetch handler}. While scrolling
+     * fast the window grows with the scroll velocity, up to four times this
+     * number of rows.
+     */
+    public final IntegerProperty prefetchRowCountProperty() {
+        if (prefetchRowCount == null) {
+            prefetchRowCount = new SimpleIntegerProperty(this, "prefetchRowCount", 2); //$NON-NLS-1$
+        }
+        return prefetchRowCount;
+    }
+    private IntegerProperty prefetchRowCount;
+
+    /**
+     * Sets how many rows past the viewport are announced to the prefetch handler.
+     */
+    public final void setPrefetchRowCount(int value) {
+        prefetchRowCountProperty().set(value);
+    }
+
+    /**
+     * Returns how many rows past the viewport are announced to the prefetch handler.
+     */
+    public final int getPrefetchRowCount() {
+        return prefetchRowCount == null ? 2 : prefetchRowCount.get();
+    }
+
+
     /**
      * Property representing the cell factory that is currently set in this
      * GridView, or null if no cell factory has been set (in which case the
@@ -621,6 +940,12 @@ public class GridView<T> extends ControlsFXControl {
             @Override public void onChanged(Change<? extends T> c) {
                 updateItemCount();
 
+                // removed selected items are reported as the items the model
+                // held before this change
+                followModelChange(c, () -> itemsChanged(c));
+            }
+
+            private void itemsChanged(Change<? extends T> c) {
                 boolean doSelectionUpdate = true;
 
                 while (c.next()) {
@@ -736,59 +1061,25 @@ public class GridView<T> extends ControlsFXControl {
 
                     // General approach:
                     //   -- detected a sort has happened
-                    //   -- Create a permutation lookup map (1)
-                    //   -- dump all the selected indices into a list (2)
-                    //   -- clear the selected items / indexes (3)
-                    //   -- create a list containing the new indices (4)
-                    //   -- for each previously-selected index (5)
-                    //     -- if index is in the permutation lookup map
-                    //       -- add the new index to the new indices list
-                    //   -- Perform batch selection (6)
+                    //   -- copy the permutation into an int array (1)
+                    //   -- move the selected indices in the permutated range
+                    //      to their new positions in one pass, firing a
+                    //      single selection change (2)
 
                     // (1)
-                    int length = c.getTo() - c.getFrom();
-                    HashMap<Integer, Integer> pMap = new HashMap<Integer, Integer>(length);
-                    for (int i = c.getFrom(); i < c.getTo(); i++) {
-                        pMap.put(i, c.getPermutation(i));
+                    int from = c.getFrom();
+                    int[] perm = new int[c.getTo() - from];
+                    for (int i = 0; i < perm.length; i++) {
+                        perm[i] = c.getPermutation(from + i);
                     }
 
                     // (2)
-                    List<Integer> selectedIndices = new ArrayList<Integer>(getSelectedIndices());
-
-
-                    // (3)
-                    clearSelection();
-
-                    // (4)
-                    List<Integer> newIndices = new ArrayList<Integer>(getSelectedIndices().size());
-
-                    // (5)
-                    for (int i = 0; i < selectedIndices.size(); i++) {
-                        int oldIndex = selectedIndices.get(i);
-
-                        if (pMap.containsKey(oldIndex)) {
-                            Integer newIndex = pMap.get(oldIndex);
-                            newIndices.add(newIndex);
-                        }
-                    }
-
-                    // (6)
-                    if (!newIndices.isEmpty()) {
-                        if (newIndices.size() == 1) {
-                            select(newIndices.get(0));
-                        } else {
-                            int[] ints = new int[newIndices.size() - 1];
-                            for (int i = 0; i < newIndices.size() - 1; i++) {
-                                ints[i] = newIndices.get(i + 1);
-                            }
-                            selectIndices(newIndices.get(0), ints);
-                        }
-                    }
+                    permuteSelection(from, c.getTo(), perm);
                 }
             }
 
             if (!shifts.isEmpty()) {
-                shiftSelection(shifts, null);
+                shiftSelection(shifts);
             }
 
             previousModelSize = getItemCount();
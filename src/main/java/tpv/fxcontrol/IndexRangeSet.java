@@ -0,0 +1,653 @@
+package tpv.fxcontrol;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A set of non-negative int indices stored as sorted, disjoint and
+ * non-adjacent runs {@code [start, end)}. It offers the parts of the
+ * {@link java.util.BitSet} API that the selection models use, but its cost
+ * depends on the number of runs instead of the highest index: selecting all
+ * of ten million items is a single run, and a sparse selection over a large
+ * index space only stores the selected runs.
+ * <p>
+ * Lookups are binary searches over the runs. Inserting or removing a run moves
+ * the runs after it, so edits are O(runs) in the worst case. {@link #rank(int)}
+ * and {@link #select(int)} binary search a prefix count of the run lengths,
+ * which an edit invalidates from the first run it touches and the next rank or
+ * select query repairs. They are O(log runs) only between edits: the first
+ * query after an edit is O(runs), so interleaved edits and queries cost
+ * O(runs) each, as the edits themselves do.
+ * <p>
+ * This class is package private, it is only used by the selection models.
+ */
+final class IndexRangeSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    // starts[k] and ends[k] bound the k-th run, ends are exclusive
+    private int[] starts = EMPTY;
+    private int[] ends = EMPTY;
+    private int count;
+
+    private int cardinality;
+
+    // prefix[k] is the number of indices in the runs before run k, which is
+    // valid for every k below validPrefix
+    private int[] prefix = EMPTY;
+    private int validPrefix;
+
+    IndexRangeSet() {
+    }
+
+    private IndexRangeSet(int[] starts, int[] ends, int count, int cardinality) {
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+        this.cardinality = cardinality;
+    }
+
+    IndexRangeSet copy() {
+        return new IndexRangeSet(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), count, cardinality);
+    }
+
+    /**
+     * Returns a copy of the indices of this set from {@code from} (inclusive)
+     * to {@code to} (exclusive).
+     */
+    IndexRangeSet copy(int from, int to) {
+        checkRange(from, to);
+        if (from == to) {
+            // inside a run the clamping below would leave an empty run
+            return new IndexRangeSet();
+        }
+        int lo = firstEndingAtOrAfter(from + 1);
+        int hi = lastStartingAtOrBefore(to - 1);
+        int n = Math.max(0, hi - lo + 1);
+        int[] newStarts = Arrays.copyOfRange(starts, lo, lo + n);
+        int[] newEnds = Arrays.copyOfRange(ends, lo, lo + n);
+        int newCardinality = 0;
+        for (int k = 0; k < n; k++) {
+            newStarts[k] = Math.max(from, newStarts[k]);
+            newEnds[k] = Math.min(to, newEnds[k]);
+            newCardinality += newEnds[k] - newStarts[k];
+        }
+        return new IndexRangeSet(newStarts, newEnds, n, newCardinality);
+    }
+
+    /**
+     * Builds a set from the first {@code n} values of an array sorted in
+     * ascending order, in a single pass.
+     */
+    static IndexRangeSet ofSorted(int[] values, int n) {
+        IndexRangeSet set = new IndexRangeSet();
+        set.starts = new int[n];
+        set.ends = new int[n];
+        for (int i = 0; i < n; i++) {
+            int value = values[i];
+            if (set.count > 0 && value <= set.ends[set.count - 1]) {
+                if (value == set.ends[set.count - 1]) {
+                    set.ends[set.count - 1]++;
+                    set.cardinality++;
+                }
+            } else {
+                set.starts[set.count] = value;
+                set.ends[set.count++] = value + 1;
+                set.cardinality++;
+            }
+        }
+        return set;
+    }
+
+    /** Returns the number of runs. */
+    int rangeCount() {
+        return count;
+    }
+
+    /** Returns the first index of the k-th run. */
+    int rangeStart(int k) {
+        return starts[k];
+    }
+
+    /** Returns one past the last index of the k-th run. */
+    int rangeEnd(int k) {
+        return ends[k];
+    }
+
+    /** Returns the number of indices in the set. */
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Returns one past the highest index in the set, or 0 if it is empty. */
+    int length() {
+        return count == 0 ? 0 : ends[count - 1];
+    }
+
+    boolean get(int index) {
+        int k = lastStartingAtOrBefore(index);
+        return k >= 0 && index < ends[k];
+    }
+
+    void set(int index) {
+        set(index, index + 1);
+    }
+
+    /**
+     * Adds the indices from {@code from} (inclusive) to {@code to} (exclusive),
+     * merging every run it overlaps or touches.
+     */
+    void set(int from, int to) {
+        checkRange(from, to);
+        if (from == to) {
+            return;
+        }
+
+        int lo = firstEndingAtOrAfter(from);
+        int hi = lastStartingAtOrBefore(to);
+        if (lo > hi) {
+            splice(lo, lo, 1);
+            starts[lo] = from;
+            ends[lo] = to;
+            cardinality += to - from;
+            return;
+        }
+
+        int start = Math.min(from, starts[lo]);
+        int end = Math.max(to, ends[hi]);
+        for (int k = lo; k <= hi; k++) {
+            cardinality -= ends[k] - starts[k];
+        }
+        splice(lo, hi + 1, 1);
+        starts[lo] = start;
+        ends[lo] = end;
+        cardinality += end - start;
+    }
+
+    void clear(int index) {
+        clear(index, index + 1);
+    }
+
+    /**
+     * Removes the indices from {@code from} (inclusive) to {@code to}
+     * (exclusive), splitting the runs at the edges if needed.
+     */
+    void clear(int from, int to) {
+        checkRange(from, to);
+        if (from == to) {
+            return;
+        }
+
+        int lo = firstEndingAtOrAfter(from + 1);
+        int hi = lastStartingAtOrBefore(to - 1);
+        if (lo > hi) {
+            return;
+        }
+
+        int headStart = starts[lo];
+        int tailEnd = ends[hi];
+        for (int k = lo; k <= hi; k++) {
+            cardinality -= ends[k] - starts[k];
+        }
+
+        boolean head = headStart < from;
+        boolean tail = tailEnd > to;
+        splice(lo, hi + 1, (head ? 1 : 0) + (tail ? 1 : 0));
+        int k = lo;
+        if (head) {
+            starts[k] = headStart;
+            ends[k++] = from;
+            cardinality += from - headStart;
+        }
+        if (tail) {
+            starts[k] = to;
+            ends[k] = tailEnd;
+            cardinality += tailEnd - to;
+        }
+    }
+
+    void clear() {
+        starts = EMPTY;
+        ends = EMPTY;
+        count = 0;
+        cardinality = 0;
+        validPrefix = 0;
+    }
+
+    /** Returns the first index in the set at or after {@code from}, or -1. */
+    int nextSetBit(int from) {
+        if (from < 0) {
+            throw new IndexOutOfBoundsException("from < 0: " + from);
+        }
+        int k = firstEndingAtOrAfter(from + 1);
+        return k == count ? -1 : Math.max(from, starts[k]);
+    }
+
+    /** Returns the last index in the set at or before {@code from}, or -1. */
+    int previousSetBit(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        int k = lastStartingAtOrBefore(from);
+        return k < 0 ? -1 : Math.min(from, ends[k] - 1);
+    }
+
+    /**
+     * Returns how many indices in the set are lower than {@code index}. This
+     * is O(log runs), plus O(runs) for the first query after an edit.
+     */
+    int rank(int index) {
+        int k = lastStartingAtOrBefore(index - 1);
+        if (k < 0) {
+            return 0;
+        }
+        updatePrefix();
+        return prefix[k] + Math.min(index, ends[k]) - starts[k];
+    }
+
+    /**
+     * Returns the n-th lowest index in the set, counting from zero. This is
+     * O(log runs), plus O(runs) for the first query after an edit.
+     */
+    int select(int n) {
+        if (n < 0 || n >= cardinality) {
+            throw new IndexOutOfBoundsException(n + " >= " + cardinality);
+        }
+        updatePrefix();
+
+        // largest k with prefix[k] <= n
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefix[mid] <= n) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int k = lo - 1;
+        return starts[k] + n - prefix[k];
+    }
+
+    /**
+     * Applies a batch of insertions and removals to the indices. The pairs
+     * must be sorted by descending position and are applied in that order: a
+     * positive amount moves every index at or after its position up by that
+     * amount, a negative amount drops the indices
+     * {@code [position, position - amount)} and moves the ones after them
+     * down. Every run is pushed through all pairs as it is visited, so the
+     * whole batch is one pass over the runs.
+     */
+    void shift(int[] positions, int[] amounts) {
+        int pairs = positions.length;
+        if (pairs == 0 || count == 0) {
+            return;
+        }
+
+        // a pair splits at most one run, when an insertion lands inside it
+        int[] newStarts = new int[count + pairs];
+        int[] newEnds = new int[count + pairs];
+        int n = 0;
+        int newCardinality = 0;
+
+        // the pieces of the current run, before and after each pair
+        int[] pieceStarts = new int[pairs + 1];
+        int[] pieceEnds = new int[pairs + 1];
+        int[] nextStarts = new int[pairs + 1];
+        int[] nextEnds = new int[pairs + 1];
+
+        for (int k = 0; k < count; k++) {
+            pieceStarts[0] = starts[k];
+            pieceEnds[0] = ends[k];
+            int pieces = 1;
+
+            for (int j = 0; j < pairs && pieces > 0; j++) {
+                int position = positions[j];
+                int amount = amounts[j];
+                int next = 0;
+                for (int i = 0; i < pieces; i++) {
+                    int start = pieceStarts[i];
+                    int end = pieceEnds[i];
+                    if (end <= position) {
+                        nextStarts[next] = start;
+                        nextEnds[next++] = end;
+                        continue;
+                    }
+                    if (start < position) {
+                        nextStarts[next] = start;
+                        nextEnds[next++] = position;
+                    }
+                    if (amount > 0) {
+                        nextStarts[next] = Math.max(start, position) + amount;
+                        nextEnds[next++] = end + amount;
+                    } else if (end > position - amount) {
+                        nextStarts[next] = Math.max(start, position - amount) + amount;
+                        nextEnds[next++] = end + amount;
+                    }
+                }
+
+                int[] swap = pieceStarts;
+                pieceStarts = nextStarts;
+                nextStarts = swap;
+                swap = pieceEnds;
+                pieceEnds = nextEnds;
+                nextEnds = swap;
+                pieces = next;
+            }
+
+            for (int i = 0; i < pieces; i++) {
+                int start = pieceStarts[i];
+                int end = pieceEnds[i];
+                if (n > 0 && start <= newEnds[n - 1]) {
+                    newCardinality += Math.max(0, end - newEnds[n - 1]);
+                    newEnds[n - 1] = Math.max(end, newEnds[n - 1]);
+                } else {
+                    newStarts[n] = start;
+                    newEnds[n++] = end;
+                    newCardinality += end - start;
+                }
+            }
+        }
+
+        starts = newStarts;
+        ends = newEnds;
+        count = n;
+        cardinality = newCardinality;
+        validPrefix = 0;
+    }
+
+    /** Streams the indices of the set in ascending order. */
+    IntStream stream() {
+        return IntStream.range(0, count).flatMap(k -> IntStream.range(starts[k], ends[k]));
+    }
+
+    /**
+     * Returns a spliterator over the indices of the set in ascending order,
+     * which splits by rank so both halves get the same number of indices.
+     * The set must not be modified while the spliterator is in use, so
+     * callers which hand it out should pass a {@link #copy()}; several
+     * threads may then walk the splits at once.
+     */
+    Spliterator.OfInt spliterator() {
+        // rank and select only read the prefix counts once they are valid
+        updatePrefix();
+        return new RangeSpliterator(this, 0, cardinality);
+    }
+
+    /**
+     * Returns a read-only list of the indices of the set in ascending order.
+     * The list reads through to this set, so callers which hand it out should
+     * pass a {@link #copy()}.
+     */
+    List<Integer> asList() {
+        return new AbstractList<Integer>() {
+            @Override public Integer get(int index) {
+                return select(index);
+            }
+
+            @Override public int size() {
+                return cardinality;
+            }
+        };
+    }
+
+    /** Adds every index of {@code other} to this set. */
+    void or(IndexRangeSet other) {
+        int[] newStarts = new int[count + other.count];
+        int[] newEnds = new int[count + other.count];
+        int n = 0;
+        int newCardinality = 0;
+        for (int i = 0, j = 0; i < count || j < other.count; ) {
+            int start;
+            int end;
+            if (j == other.count || (i < count && starts[i] <= other.starts[j])) {
+                start = starts[i];
+                end = ends[i++];
+            } else {
+                start = other.starts[j];
+                end = other.ends[j++];
+            }
+            if (n > 0 && start <= newEnds[n - 1]) {
+                if (end > newEnds[n - 1]) {
+                    newCardinality += end - newEnds[n - 1];
+                    newEnds[n - 1] = end;
+                }
+            } else {
+                newStarts[n] = start;
+                newEnds[n++] = end;
+                newCardinality += end - start;
+            }
+        }
+        starts = newStarts;
+        ends = newEnds;
+        count = n;
+        cardinality = newCardinality;
+        validPrefix = 0;
+    }
+
+    /** Removes every index of {@code other} from this set. */
+    void andNot(IndexRangeSet other) {
+        // every run of other splits at most one run of this set in two
+        int[] newStarts = new int[count + other.count];
+        int[] newEnds = new int[count + other.count];
+        int n = 0;
+        int newCardinality = 0;
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            int start = starts[i];
+            int end = ends[i];
+            while (j < other.count && other.ends[j] <= start) {
+                j++;
+            }
+            int m = j;
+            while (start < end && m < other.count && other.starts[m] < end) {
+                if (other.starts[m] > start) {
+                    newStarts[n] = start;
+                    newEnds[n++] = other.starts[m];
+                    newCardinality += other.starts[m] - start;
+                }
+                start = Math.max(start, other.ends[m]);
+                if (other.ends[m] <= end) {
+                    m++;
+                } else {
+                    break;
+                }
+            }
+            j = m;
+            if (start < end) {
+                newStarts[n] = start;
+                newEnds[n++] = end;
+                newCardinality += end - start;
+            }
+        }
+        starts = newStarts;
+        ends = newEnds;
+        count = n;
+        cardinality = newCardinality;
+        validPrefix = 0;
+    }
+
+    @Override public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof IndexRangeSet)) {
+            return false;
+        }
+        IndexRangeSet other = (IndexRangeSet) obj;
+        return count == other.count
+                && Arrays.equals(starts, 0, count, other.starts, 0, count)
+                && Arrays.equals(ends, 0, count, other.ends, 0, count);
+    }
+
+    @Override public int hashCode() {
+        int hash = 1;
+        for (int k = 0; k < count; k++) {
+            hash = 31 * (31 * hash + starts[k]) + ends[k];
+        }
+        return hash;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = 0; k < count; k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(starts[k]);
+            if (ends[k] - starts[k] > 1) {
+                sb.append("..").append(ends[k] - 1);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static final class RangeSpliterator implements Spliterator.OfInt {
+        private final IndexRangeSet set;
+        private final int end;
+
+        // the rank of the next index, the index itself and its run
+        private int position;
+        private int index;
+        private int run;
+
+        RangeSpliterator(IndexRangeSet set, int position, int end) {
+            this.set = set;
+            this.end = end;
+            moveTo(position);
+        }
+
+        private void moveTo(int position) {
+            this.position = position;
+            if (position < end) {
+                index = set.select(position);
+                run = set.lastStartingAtOrBefore(index);
+            }
+        }
+
+        @Override public boolean tryAdvance(IntConsumer action) {
+            if (position >= end) {
+                return false;
+            }
+            action.accept(index);
+            if (++position < end && ++index == set.ends[run]) {
+                index = set.starts[++run];
+            }
+            return true;
+        }
+
+        @Override public void forEachRemaining(IntConsumer action) {
+            while (position < end) {
+                int last = Math.min(set.ends[run], index + end - position);
+                for (int i = index; i < last; i++) {
+                    action.accept(i);
+                }
+                position += last - index;
+                if (position < end) {
+                    index = set.starts[++run];
+                }
+            }
+        }
+
+        @Override public Spliterator.OfInt trySplit() {
+            int mid = (position + end) >>> 1;
+            if (mid <= position) {
+                return null;
+            }
+            RangeSpliterator prefix = new RangeSpliterator(set, position, mid);
+            moveTo(mid);
+            return prefix;
+        }
+
+        @Override public long estimateSize() {
+            return end - position;
+        }
+
+        @Override public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        @Override public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
+
+    // smallest k with ends[k] >= index, or count
+    private int firstEndingAtOrAfter(int index) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] >= index) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // largest k with starts[k] <= index, or -1
+    private int lastStartingAtOrBefore(int index) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    private void updatePrefix() {
+        if (validPrefix >= count) {
+            return;
+        }
+        if (prefix.length < count) {
+            prefix = new int[starts.length];
+            validPrefix = 0;
+        }
+        int k = validPrefix;
+        if (k == 0) {
+            prefix[0] = 0;
+            k = 1;
+        }
+        for (; k < count; k++) {
+            prefix[k] = prefix[k - 1] + ends[k - 1] - starts[k - 1];
+        }
+        validPrefix = count;
+    }
+
+    // replaces the runs [from, to) with room for n runs
+    private void splice(int from, int to, int n) {
+        validPrefix = Math.min(validPrefix, from);
+        int newCount = count - (to - from) + n;
+        if (newCount > starts.length) {
+            int capacity = Math.max(newCount, starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        System.arraycopy(starts, to, starts, from + n, count - to);
+        System.arraycopy(ends, to, ends, from + n, count - to);
+        count = newCount;
+    }
+
+    private static void checkRange(int from, int to) {
+        if (from < 0 || to < from) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to);
+        }
+    }
+}
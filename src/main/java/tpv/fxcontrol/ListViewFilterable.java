@@ -1,5 +1,8 @@
 package tpv.fxcontrol;
 
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -14,15 +17,19 @@ import java.util.List;
 public class ListViewFilterable<E> extends ListView<E> implements CollectionFilterable<E> {
 
     private final FilterMediator<E> mediator;
+    private final FilteredItems<E> filteredItems;
+    private final FilterDebouncer debouncer;
+    private final IntegerProperty filterLimit = new SimpleIntegerProperty(this, "filterLimit", 0) {
+        @Override
+        protected void invalidated() {
+            filteredItems.setLimit(get());
+            doFilter(getFilter());
+        }
+    };
     private final StringProperty filter = new SimpleStringProperty("") {
         @Override
         protected void invalidated() {
-            if (get().isEmpty()) {
-                reset();
-                return;
-            }
-
-            doFilter(get());
+            debouncer.request();
         }
     };
 
@@ -33,6 +40,8 @@ public class ListViewFilterable<E> extends ListView<E> implements CollectionFilt
 
     public ListViewFilterable() {
         mediator = new FilterMediator(FXCollections.observableArrayList());
+        filteredItems = new FilteredItems<>(mediator, this::getItems);
+        debouncer = new FilterDebouncer(this::applyFilter, filteredItems::cancel);
         mediator.sourceProperty().addListener((observable, oldValue, newValue) -> {
             doFilter(getFilter());
         });
@@ -43,6 +52,21 @@ public class ListViewFilterable<E> extends ListView<E> implements CollectionFilt
         return filter;
     }
 
+    @Override
+    public final ObjectProperty<FilterDebounce> filterDebounceProperty() {
+        return debouncer.policyProperty();
+    }
+
+    private void applyFilter() {
+        String filter = getFilter();
+        if (filter == null || filter.isEmpty()) {
+            reset();
+            return;
+        }
+
+        doFilter(filter);
+    }
+
     @Override
     public FilterMediator<E> getMediator() {
         return mediator;
@@ -50,7 +74,26 @@ public class ListViewFilterable<E> extends ListView<E> implements CollectionFilt
 
     @Override
     public void doFilter(String filter) {
-        ListViewFilterable.this.getItems().setAll(getMediator().filter(filter));
+        filteredItems.filter(filter);
+    }
+
+    /**
+     * When positive, only this many of the best scored matches are shown,
+     * best first, see {@link FilterMatcher.Query#score}; the matches are
+     * ranked in a bounded heap, so a short list over a large source never
+     * collects or sorts every match. 0, the default, shows every match in
+     * source order.
+     */
+    public final IntegerProperty filterLimitProperty() {
+        return filterLimit;
+    }
+
+    public final int getFilterLimit() {
+        return filterLimit.get();
+    }
+
+    public final void setFilterLimit(int limit) {
+        filterLimit.set(limit);
     }
 
     public List<E> getFilteredItems() {
@@ -28,16 +28,16 @@ package tpv.fxcontrol;
 import com.sun.javafx.collections.NonIterableChange;
 import com.sun.javafx.scene.control.MultipleAdditionAndRemovedChange;
 import com.sun.javafx.scene.control.ReadOnlyUnbackedObservableList;
-import com.sun.javafx.scene.control.SelectedItemsReadOnlyObservableList;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableListBase;
 import javafx.scene.control.MultipleSelectionModel;
 import javafx.scene.control.SelectionMode;
-import javafx.util.Callback;
 import javafx.util.Pair;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -70,11 +70,7 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
 
         selectedIndices = new SelectedIndicesList();
 
-        selectedItems = new SelectedItemsReadOnlyObservableList<T>(selectedIndices, () -> getItemCount()) {
-            @Override protected T getModelItem(int index) {
-                return MultipleSelectionModelBase.this.getModelItem(index);
-            }
-        };
+        selectedItems = new SelectedItemsList();
     }
 
 
@@ -120,6 +116,27 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
 
 
 
+    /**
+     * Returns a spliterator over a snapshot of the selected indices, in
+     * ascending order. Taking the snapshot copies the runs of the selection,
+     * not the indices, and the spliterator splits by rank for parallel use.
+     */
+    Spliterator.OfInt selectedIndicesSpliterator() {
+        return selectedIndices.ranges.copy().spliterator();
+    }
+
+    /**
+     * Returns a spliterator over the items at a snapshot of the selected
+     * indices, in ascending index order. Items are read from the model as the
+     * spliterator advances, so the full selection is never materialised; the
+     * model must not change while it is in use.
+     */
+    Spliterator<T> selectedItemsSpliterator() {
+        return new SelectedItemsSpliterator(selectedIndicesSpliterator());
+    }
+
+
+
     /* *********************************************************************
      *                                                                     *
      * Internal field                                                      *
@@ -128,6 +145,10 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
 
     ListChangeListener.Change selectedItemChange;
 
+    // while the selection follows a change of the items, the item each index
+    // held before that change, else null, see followModelChange
+    private IntFunction<T> previousModelItem;
+
 
 
     /* *********************************************************************
@@ -168,60 +189,38 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
      */
     protected abstract int getFocusedIndex();
 
-    static class ShiftParams {
-        private final int clearIndex;
-        private final int setIndex;
-        private final boolean selected;
-
-        ShiftParams(int clearIndex, int setIndex, boolean selected) {
-            this.clearIndex = clearIndex;
-            this.setIndex = setIndex;
-            this.selected = selected;
-        }
-
-        public final int getClearIndex() {
-            return clearIndex;
-        }
-
-        public final int getSetIndex() {
-            return setIndex;
-        }
-
-        public final boolean isSelected() {
-            return selected;
-        }
-    }
-
     // package only
-    void shiftSelection(int position, int shift, final Callback<ShiftParams, Void> callback) {
-        shiftSelection(Arrays.asList(new Pair<>(position, shift)), callback);
+    void shiftSelection(int position, int shift) {
+        shiftSelection(Arrays.asList(new Pair<>(position, shift)));
     }
 
-    void shiftSelection(List<Pair<Integer, Integer>> shifts, final Callback<ShiftParams, Void> callback) {
+    void shiftSelection(List<Pair<Integer, Integer>> shifts) {
         int selectedIndicesCardinality = selectedIndices.size(); // number of true bits
         if (selectedIndicesCardinality == 0) return;
 
-        int selectedIndicesSize = selectedIndices.bitsetSize();   // number of bits reserved
-
-        int[] perm = new int[selectedIndicesSize];
-        Arrays.fill(perm, -1);
-
         // sort the list so that we iterate from highest position to lowest position
         Collections.sort(shifts, (s1, s2) -> Integer.compare(s2.getKey(), s1.getKey()));
         final int lowestShiftPosition = shifts.get(shifts.size() - 1).getKey();
 
-        // make a copy of the selectedIndices before so we can compare to it afterwards
-        BitSet selectedIndicesCopy = (BitSet) selectedIndices.bitset.clone();
-
-        startAtomic();
+        // with no check here, we get RT-15024
+        final int[] positions = new int[shifts.size()];
+        final int[] amounts = new int[shifts.size()];
+        int pairs = 0;
         for (Pair<Integer, Integer> shift : shifts) {
-            doShift(shift, callback, perm);
+            if (shift.getKey() >= 0 && shift.getValue() != 0) {
+                positions[pairs] = shift.getKey();
+                amounts[pairs++] = shift.getValue();
+            }
         }
-        stopAtomic();
 
-        // strip out all useless -1 default values from the perm array
-        final int[] prunedPerm = Arrays.stream(perm).filter(value -> value > -1).toArray();
-        final boolean hasSelectionChanged = prunedPerm.length > 0;
+        // make a copy of the selectedIndices before so we can compare to it afterwards
+        IndexRangeSet selectedIndicesCopy = selectedIndices.ranges.copy();
+
+        // all pairs are applied to each run of selected indices in one pass
+        selectedIndices.ranges.shift(Arrays.copyOf(positions, pairs), Arrays.copyOf(amounts, pairs));
+        selectedIndices.reset();
+
+        final boolean hasSelectionChanged = !selectedIndices.ranges.equals(selectedIndicesCopy);
 
         // This ensure that the selection remains accurate when a shift occurs.
         final int selectedIndex = getSelectedIndex();
@@ -257,66 +256,65 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
 
         if (hasSelectionChanged) {
             // work out what indices were removed and added
-            BitSet removed = (BitSet) selectedIndicesCopy.clone();
-            removed.andNot(selectedIndices.bitset);
+            IndexRangeSet removed = selectedIndicesCopy.copy();
+            removed.andNot(selectedIndices.ranges);
 
-            BitSet added = (BitSet) selectedIndices.bitset.clone();
+            IndexRangeSet added = selectedIndices.ranges.copy();
             added.andNot(selectedIndicesCopy);
 
             selectedIndices.reset();
             selectedIndices.callObservers(new MultipleAdditionAndRemovedChange<>(
-                    added.stream().boxed().collect(Collectors.toList()),
-                    removed.stream().boxed().collect(Collectors.toList()),
+                    added.asList(),
+                    removed.asList(),
                     selectedIndices
             ));
         }
     }
 
-    private void doShift(Pair<Integer, Integer> shiftPair, final Callback<ShiftParams, Void> callback, int[] perm) {
-        final int position = shiftPair.getKey();
-        final int shift = shiftPair.getValue();
-
-        // with no check here, we get RT-15024
-        if (position < 0) return;
-        if (shift == 0) return;
-
-        int idx = (int) Arrays.stream(perm).filter(value -> value > -1).count();
-
-        int selectedIndicesSize = selectedIndices.bitsetSize() - idx;   // number of bits reserved
-
-        if (shift > 0) {
-            for (int i = selectedIndicesSize - 1; i >= position && i >= 0; i--) {
-                boolean selected = selectedIndices.isSelected(i);
-
-                if (callback == null) {
-                    selectedIndices.clear(i);
-                    selectedIndices.set(i + shift, selected);
-                } else {
-                    callback.call(new ShiftParams(i, i + shift, selected));
-                }
-
-                if (selected) {
-                    perm[idx++] = i + 1;
+    /**
+     * Moves every selected index {@code i} in {@code [from, to)} to
+     * {@code perm[i - from]}, as reported by a permutation of the items. The
+     * new indices are collected into an int array, sorted and turned into runs
+     * in one pass, and listeners get a single change covering the permutated
+     * part of the selection. The selected and focused indices follow their
+     * items.
+     */
+    void permuteSelection(int from, int to, int[] perm) {
+        IndexRangeSet ranges = selectedIndices.ranges;
+        int fromPos = ranges.rank(from);
+        int n = ranges.rank(to) - fromPos;
+
+        if (n > 0) {
+            int[] moved = new int[n];
+            int m = 0;
+            for (int i = ranges.nextSetBit(from); i >= 0 && i < to; i = ranges.nextSetBit(i + 1)) {
+                moved[m++] = perm[i - from];
+            }
+            Arrays.sort(moved);
+
+            IndexRangeSet removed = ranges.copy(from, to);
+            IndexRangeSet added = IndexRangeSet.ofSorted(moved, n);
+            if (!added.equals(removed)) {
+                ranges.clear(from, to);
+                ranges.or(added);
+                selectedIndices.reset();
+                if (!isAtomic()) {
+                    selectedIndices.callObservers(new NonIterableChange.GenericAddRemoveChange<>(
+                            fromPos, fromPos + n, removed.asList(), selectedIndices));
                 }
             }
-            selectedIndices.clear(position);
-        } else if (shift < 0) {
-            for (int i = position; i < selectedIndicesSize; i++) {
-                if ((i + shift) < 0) continue;
-                if ((i + 1 + shift) < position) continue;
-                boolean selected = selectedIndices.isSelected(i + 1);
+        }
 
-                if (callback == null) {
-                    selectedIndices.clear(i + 1);
-                    selectedIndices.set(i + 1 + shift, selected);
-                } else {
-                    callback.call(new ShiftParams(i + 1, i + 1 + shift, selected));
-                }
+        final int selectedIndex = getSelectedIndex();
+        if (selectedIndex >= from && selectedIndex < to) {
+            int newIndex = perm[selectedIndex - from];
+            setSelectedIndex(newIndex);
+            setSelectedItem(getModelItem(newIndex));
+        }
 
-                if (selected) {
-                    perm[idx++] = i;
-                }
-            }
+        final int focusedIndex = getFocusedIndex();
+        if (focusedIndex >= from && focusedIndex < to) {
+            focus(perm[focusedIndex - from]);
         }
     }
 
@@ -332,6 +330,37 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
         return selectedIndices.isAtomic();
     }
 
+    /**
+     * Runs the given selection edits as one batch. Listeners of the selected
+     * indices hear nothing while the edits run, and get a single change once
+     * the outermost batch ends, with one sub-change per run of indices that
+     * was added or removed overall.
+     */
+    void runBatch(Runnable edits) {
+        selectedIndices.startBatch();
+        try {
+            edits.run();
+        } finally {
+            selectedIndices.stopBatch();
+        }
+    }
+
+    /**
+     * Runs the selection updates which follow the given change of the items.
+     * The selected items changes fired meanwhile report, as removed items, the
+     * items the removed indices held before the change, not the items which
+     * are at those indices now.
+     */
+    void followModelChange(ListChangeListener.Change<? extends T> c, Runnable updates) {
+        IntFunction<T> previous = previousModelItem;
+        previousModelItem = new PreviousModelItems<>(c, this::getModelItem);
+        try {
+            updates.run();
+        } finally {
+            previousModelItem = previous;
+        }
+    }
+
     @Override public void clearAndSelect(int row) {
         if (row < 0 || row >= getItemCount()) {
             clearSelection();
@@ -353,8 +382,7 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
         // firstly we make a copy of the selection, so that we can send out
         // the correct details in the selection change event.
         // We remove the new selection from the list seeing as it is not removed.
-        BitSet selectedIndicesCopy = new BitSet();
-        selectedIndicesCopy.or(selectedIndices.bitset);
+        IndexRangeSet selectedIndicesCopy = selectedIndices.ranges.copy();
         selectedIndicesCopy.clear(row);
         // No modifications should be made to 'selectedIndicesCopy' to honour the constructor.
         List<Integer> previousSelectedIndices = new SelectedIndicesList(selectedIndicesCopy);
@@ -585,12 +613,12 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
     @Override public boolean isSelected(int index) {
         // Note the change in semantics here - we used to check to ensure that
         // the index is less than the item count, but now simply ensure that
-        // it is less than the length of the selectedIndices bitset. This helps
+        // it is less than the length of the selectedIndices ranges. This helps
         // to resolve issues such as RT-26721, where isSelected(int) was being
         // called for indices that exceeded the item count, as a TreeItem (e.g.
         // the root) was being collapsed.
 //        if (index >= 0 && index < getItemCount()) {
-        if (index >= 0 && index < selectedIndices.bitsetSize()) {
+        if (index >= 0 && index < selectedIndices.length()) {
             return selectedIndices.isSelected(index);
         }
 
@@ -638,15 +666,18 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
      **********************************************************************/
 
     class SelectedIndicesList extends ReadOnlyUnbackedObservableList<Integer> {
-        private final BitSet bitset;
+        private final IndexRangeSet ranges;
 
-        private int size = -1;
         private int lastGetIndex = -1;
         private int lastGetValue = -1;
 
         // Fix for RT-20945 (and numerous other issues!)
         private int atomicityCount = 0;
 
+        // the selection when the outermost batch started, see runBatch
+        private int batchDepth = 0;
+        private IndexRangeSet batchSnapshot;
+
 //        @Override
 //        public void callObservers(Change<Integer> c) {
 //            throw new RuntimeException("callObservers unavailable");
@@ -656,16 +687,16 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
          * Constructs a new instance of SelectedIndicesList
          */
         public SelectedIndicesList() {
-            this(new BitSet());
+            this(new IndexRangeSet());
         }
 
         /**
-         * Constructs a new instance of SelectedIndicesList from the provided BitSet.
-         * The underlying source BitSet shouldn't be modified once it has been passed to the constructor.
-         * @param bitset Bitset to be used.
+         * Constructs a new instance of SelectedIndicesList from the provided IndexRangeSet.
+         * The underlying source IndexRangeSet shouldn't be modified once it has been passed to the constructor.
+         * @param ranges IndexRangeSet to be used.
          */
-        public SelectedIndicesList(BitSet bitset) {
-            this.bitset = bitset;
+        public SelectedIndicesList(IndexRangeSet ranges) {
+            this.ranges = ranges;
         }
 
         boolean isAtomic() {
@@ -678,6 +709,39 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
             atomicityCount = Math.max(0, atomicityCount - 1);
         }
 
+        void startBatch() {
+            if (batchDepth++ == 0) {
+                batchSnapshot = ranges.copy();
+            }
+        }
+
+        void stopBatch() {
+            if (batchDepth == 0 || --batchDepth > 0) {
+                return;
+            }
+
+            IndexRangeSet snapshot = batchSnapshot;
+            batchSnapshot = null;
+            IndexRangeSet removed = snapshot.copy();
+            removed.andNot(ranges);
+            IndexRangeSet added = ranges.copy();
+            added.andNot(snapshot);
+            reset();
+            if (!isAtomic() && !(removed.isEmpty() && added.isEmpty())) {
+                callObservers(new RangeChange(this, ranges, removed, added));
+            }
+        }
+
+        private boolean isQuiet() {
+            return isAtomic() || batchDepth > 0;
+        }
+
+        @Override public void callObservers(ListChangeListener.Change<Integer> c) {
+            if (batchDepth == 0) {
+                super.callObservers(c);
+            }
+        }
+
         // Returns the selected index at the given index.
         // e.g. if our selectedIndices are [1,3,5], then an index of 2 will return 5 here.
         @Override public Integer get(int index) {
@@ -690,25 +754,20 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
                 // we're iterating forward in order, short circuit for
                 // performance reasons (RT-39776)
                 lastGetIndex++;
-                lastGetValue = bitset.nextSetBit(lastGetValue + 1);
+                lastGetValue = ranges.nextSetBit(lastGetValue + 1);
                 return lastGetValue;
             } else if (index == (lastGetIndex - 1) && lastGetValue > 0) {
                 // we're iterating backward in order, short circuit for
                 // performance reasons (RT-39776)
                 lastGetIndex--;
-                lastGetValue = bitset.previousSetBit(lastGetValue - 1);
+                lastGetValue = ranges.previousSetBit(lastGetValue - 1);
                 return lastGetValue;
             } else {
-                for (lastGetIndex = 0, lastGetValue = bitset.nextSetBit(0);
-                     lastGetValue >= 0 || lastGetIndex == index;
-                     lastGetIndex++, lastGetValue = bitset.nextSetBit(lastGetValue + 1)) {
-                    if (lastGetIndex == index) {
-                        return lastGetValue;
-                    }
-                }
+                // random access, a binary search over the run prefix counts
+                lastGetIndex = index;
+                lastGetValue = ranges.select(index);
+                return lastGetValue;
             }
-
-            return -1;
         }
 
         public void set(int index) {
@@ -717,8 +776,7 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
             }
 
             _beginChange();
-            size = -1;
-            bitset.set(index);
+            ranges.set(index);
             int indicesIndex = indexOf(index);
             _nextAdd(indicesIndex, indicesIndex + 1);
             _endChange();
@@ -737,16 +795,30 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
         }
 
         public void set(int index, int end, boolean isSet) {
+            if (index >= end) {
+                return;
+            }
+
+            // only the runs which actually change are reported, one
+            // sub-change per run, so selecting a range costs O(runs)
+            IndexRangeSet window = new IndexRangeSet();
+            window.set(index, end);
+            IndexRangeSet selected = ranges.copy(index, end);
+
             _beginChange();
-            size = -1;
             if (isSet) {
-                bitset.set(index, end, isSet);
-                int indicesIndex = indexOf(index);
-                int span = end - index;
-                _nextAdd(indicesIndex, indicesIndex + span);
+                window.andNot(selected);
+                ranges.set(index, end);
+                for (int k = 0; k < window.rangeCount(); k++) {
+                    int from = ranges.rank(window.rangeStart(k));
+                    _nextAdd(from, from + window.rangeEnd(k) - window.rangeStart(k));
+                }
             } else {
-                // TODO handle remove
-                bitset.set(index, end, isSet);
+                int from = ranges.rank(index);
+                ranges.clear(index, end);
+                for (int k = 0; k < selected.rangeCount(); k++) {
+                    _nextRemove(from, indexRange(selected.rangeStart(k), selected.rangeEnd(k)));
+                }
             }
             _endChange();
         }
@@ -814,45 +886,45 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
         }
 
         public void clear() {
-            _beginChange();
-            List<Integer> removed = bitset.stream().boxed().collect(Collectors.toList());
-            size = 0;
-            bitset.clear();
-            _nextRemove(0, removed);
-            _endChange();
+            if (ranges.isEmpty()) {
+                return;
+            }
+
+            // the removed indices are read lazily from a copy of the runs, so
+            // clearing a huge selection does not box every index up front
+            IndexRangeSet removed = ranges.copy();
+            ranges.clear();
+            if (!isQuiet()) {
+                callObservers(new NonIterableChange.GenericAddRemoveChange<>(0, 0, removed.asList(), this));
+            }
         }
 
         public void clear(int index) {
-            if (!bitset.get(index)) return;
+            if (!ranges.get(index)) return;
 
             int indicesIndex = indexOf(index);
             _beginChange();
-            size = -1;
-            bitset.clear(index);
+            ranges.clear(index);
             _nextRemove(indicesIndex, index);
             _endChange();
         }
 
         public boolean isSelected(int index) {
-            return bitset.get(index);
+            return ranges.get(index);
         }
 
         public boolean isNotSelected(int index) {
             return !isSelected(index);
         }
 
-        /** Returns number of true bits in BitSet */
+        /** Returns number of selected indices */
         @Override public int size() {
-            if (size >= 0) {
-                return size;
-            }
-            size = bitset.cardinality();
-            return size;
+            return ranges.cardinality();
         }
 
-        /** Returns the number of bits reserved in the BitSet */
-        public int bitsetSize() {
-            return bitset.size();
+        /** Returns one past the highest selected index */
+        public int length() {
+            return ranges.length();
         }
 
         @Override public int indexOf(Object obj) {
@@ -861,35 +933,11 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
             }
             Number n = (Number) obj;
             int index = n.intValue();
-            if (!bitset.get(index)) {
+            if (index < 0 || !ranges.get(index)) {
                 return -1;
             }
 
-            // is left most bit
-            if (index == 0) {
-                return 0;
-            }
-
-            // is right most bit
-            if (index == bitset.length() - 1) {
-                return size() - 1;
-            }
-
-            // count right bit
-            if (index > bitset.length() / 2) {
-                int count = 1;
-                for (int i = bitset.nextSetBit(index+1); i >= 0; i = bitset.nextSetBit(i+1)) {
-                    count++;
-                }
-                return size() - count;
-            }
-
-            // count left bit
-            int count = 0;
-            for (int i = bitset.previousSetBit(index-1);  i >= 0; i = bitset.previousSetBit(i-1)) {
-                count++;
-            }
-            return count;
+            return ranges.rank(index);
         }
 
         @Override public boolean contains(Object o) {
@@ -897,8 +945,7 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
                 Number n = (Number) o;
                 int index = n.intValue();
 
-                return index >= 0 && index < bitset.length() &&
-                        bitset.get(index);
+                return index >= 0 && ranges.get(index);
             }
 
             return false;
@@ -909,58 +956,355 @@ abstract class MultipleSelectionModelBase<T> extends MultipleSelectionModel<T> {
             this.lastGetValue = -1;
         }
 
+        // a read-only list of the consecutive indices [from, to)
+        private List<Integer> indexRange(int from, int to) {
+            return new AbstractList<Integer>() {
+                @Override public Integer get(int i) {
+                    return from + i;
+                }
+
+                @Override public int size() {
+                    return to - from;
+                }
+            };
+        }
+
         @Override public void _beginChange() {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 super._beginChange();
             }
         }
 
         @Override public void _endChange() {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 super._endChange();
             }
         }
 
         @Override public final void _nextUpdate(int pos) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextUpdate(pos);
             }
         }
 
         @Override public final void _nextSet(int idx, Integer old) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextSet(idx, old);
             }
         }
 
         @Override public final void _nextReplace(int from, int to, List<? extends Integer> removed) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextReplace(from, to, removed);
             }
         }
 
         @Override public final void _nextRemove(int idx, List<? extends Integer> removed) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextRemove(idx, removed);
             }
         }
 
         @Override public final void _nextRemove(int idx, Integer removed) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextRemove(idx, removed);
             }
         }
 
         @Override public final void _nextPermutation(int from, int to, int[] perm) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextPermutation(from, to, perm);
             }
         }
 
         @Override public final void _nextAdd(int from, int to) {
-            if (!isAtomic()) {
+            if (!isQuiet()) {
                 nextAdd(from, to);
             }
         }
     }
+
+    /*
+     * The selected items, read from the model at the selected indices. Nothing
+     * is stored per item: get(i) is the model item at the i-th selected index
+     * and the size is the number of selected indices, so a huge selection
+     * costs no more here than its runs. A change of the selected indices is
+     * handed on as a change of the items at the same positions. Only its
+     * removed items are copied, when the change is created, so they are the
+     * items that were selected even if the model removed or moved them.
+     */
+    private final class SelectedItemsList extends ObservableListBase<T> {
+
+        SelectedItemsList() {
+            selectedIndices.addListener((ListChangeListener<Integer>) c -> fireChange(new SelectedItemsChange(this, c)));
+        }
+
+        @Override public T get(int index) {
+            return getModelItem(selectedIndices.get(index));
+        }
+
+        @Override public int size() {
+            return selectedIndices.size();
+        }
+    }
+
+    private final class SelectedItemsChange extends ListChangeListener.Change<T> {
+        private final ListChangeListener.Change<? extends Integer> indices;
+
+        // the removed items of each sub-change
+        private final List<List<T>> removed = new ArrayList<>();
+        private int cursor = -1;
+
+        SelectedItemsChange(ObservableList<T> list, ListChangeListener.Change<? extends Integer> indices) {
+            super(list);
+            this.indices = indices;
+
+            // the removed indices refer to the items before the change, which
+            // a change of the model no longer holds at those indices
+            IntFunction<T> item = previousModelItem != null ? previousModelItem
+                    : MultipleSelectionModelBase.this::getModelItem;
+            while (indices.next()) {
+                List<? extends Integer> removedIndices = indices.getRemoved();
+                List<T> removedItems = new ArrayList<>(removedIndices.size());
+                for (Integer index : removedIndices) {
+                    removedItems.add(item.apply(index));
+                }
+                removed.add(removedItems);
+            }
+            indices.reset();
+        }
+
+        @Override public boolean next() {
+            if (indices.next()) {
+                cursor++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override public void reset() {
+            indices.reset();
+            cursor = -1;
+        }
+
+        @Override public int getFrom() {
+            return indices.getFrom();
+        }
+
+        @Override public int getTo() {
+            return indices.getTo();
+        }
+
+        @Override public List<T> getRemoved() {
+            if (cursor < 0 || cursor >= removed.size()) {
+                throw new IllegalStateException("Invalid Change state: next() must be called before inspecting the Change.");
+            }
+            return Collections.unmodifiableList(removed.get(cursor));
+        }
+
+        @Override public boolean wasPermutated() {
+            return indices.wasPermutated();
+        }
+
+        @Override public boolean wasUpdated() {
+            return indices.wasUpdated();
+        }
+
+        @Override public int getPermutation(int i) {
+            return indices.getPermutation(i);
+        }
+
+        @Override protected int[] getPermutation() {
+            if (!indices.wasPermutated()) {
+                return new int[0];
+            }
+            int from = indices.getFrom();
+            int[] perm = new int[indices.getTo() - from];
+            for (int i = 0; i < perm.length; i++) {
+                perm[i] = indices.getPermutation(from + i);
+            }
+            return perm;
+        }
+    }
+
+    private final class SelectedItemsSpliterator implements Spliterator<T> {
+        private final Spliterator.OfInt indices;
+
+        SelectedItemsSpliterator(Spliterator.OfInt indices) {
+            this.indices = indices;
+        }
+
+        @Override public boolean tryAdvance(Consumer<? super T> action) {
+            return indices.tryAdvance((int index) -> action.accept(getModelItem(index)));
+        }
+
+        @Override public void forEachRemaining(Consumer<? super T> action) {
+            indices.forEachRemaining((int index) -> action.accept(getModelItem(index)));
+        }
+
+        @Override public Spliterator<T> trySplit() {
+            Spliterator.OfInt prefix = indices.trySplit();
+            return prefix == null ? null : new SelectedItemsSpliterator(prefix);
+        }
+
+        @Override public long estimateSize() {
+            return indices.estimateSize();
+        }
+
+        @Override public int characteristics() {
+            return indices.characteristics() & (ORDERED | SIZED | SUBSIZED);
+        }
+    }
+
+    /*
+     * The item each index of the model held before a change of the model. Old
+     * indices inside a removed or replaced range are read from the removed
+     * items of the change, old indices inside a permutated range from the new
+     * index of their item, and any other old index from the model, shifted by
+     * the items the change added and removed before it.
+     */
+    private static final class PreviousModelItems<T> implements IntFunction<T> {
+        private final IntFunction<T> modelItem;
+
+        // per sub-change: its start before the change, the number of indices
+        // it covered before the change, the shift of the indices after it,
+        // its removed items and its permutation, if any
+        private final int[] oldFroms;
+        private final int[] oldSizes;
+        private final int[] shifts;
+        private final List<List<? extends T>> removed = new ArrayList<>();
+        private final List<int[]> perms = new ArrayList<>();
+
+        PreviousModelItems(ListChangeListener.Change<? extends T> c, IntFunction<T> modelItem) {
+            this.modelItem = modelItem;
+            c.reset();
+            int n = 0;
+            while (c.next()) {
+                n++;
+            }
+            c.reset();
+
+            oldFroms = new int[n];
+            oldSizes = new int[n];
+            shifts = new int[n];
+            int shift = 0;
+            for (int k = 0; c.next(); k++) {
+                oldFroms[k] = c.getFrom() - shift;
+                if (c.wasPermutated()) {
+                    int[] perm = new int[c.getTo() - c.getFrom()];
+                    for (int i = 0; i < perm.length; i++) {
+                        perm[i] = c.getPermutation(c.getFrom() + i);
+                    }
+                    oldSizes[k] = perm.length;
+                    perms.add(perm);
+                    removed.add(Collections.emptyList());
+                } else {
+                    oldSizes[k] = c.getRemovedSize();
+                    perms.add(null);
+                    removed.add(c.getRemoved());
+                }
+                shift += c.getAddedSize() - c.getRemovedSize();
+                shifts[k] = shift;
+            }
+            c.reset();
+        }
+
+        @Override public T apply(int index) {
+            int k = oldFroms.length - 1;
+            while (k >= 0 && oldFroms[k] > index) {
+                k--;
+            }
+            if (k < 0) {
+                return modelItem.apply(index);
+            }
+            int offset = index - oldFroms[k];
+            if (offset < oldSizes[k]) {
+                int[] perm = perms.get(k);
+                return perm != null ? modelItem.apply(perm[offset]) : removed.get(k).get(offset);
+            }
+            return modelItem.apply(index + shifts[k]);
+        }
+    }
+
+    /*
+     * The change fired at the end of a batch, built from the runs of indices
+     * the batch removed and added. Runs are walked in index order and every
+     * run lands in one sub-change; runs with no unchanged selected index
+     * between them share a sub-change, which then is a replace.
+     */
+    private static final class RangeChange extends ListChangeListener.Change<Integer> {
+        private final int[] froms;
+        private final int[] tos;
+        private final IndexRangeSet[] removed;
+        private final int size;
+        private int cursor = -1;
+
+        RangeChange(ObservableList<Integer> list, IndexRangeSet selected,
+                    IndexRangeSet removedRuns, IndexRangeSet addedRuns) {
+            super(list);
+            int capacity = removedRuns.rangeCount() + addedRuns.rangeCount();
+            froms = new int[capacity];
+            tos = new int[capacity];
+            removed = new IndexRangeSet[capacity];
+
+            int n = 0;
+            for (int i = 0, j = 0; i < removedRuns.rangeCount() || j < addedRuns.rangeCount(); ) {
+                boolean isRemoved = j == addedRuns.rangeCount()
+                        || (i < removedRuns.rangeCount() && removedRuns.rangeStart(i) < addedRuns.rangeStart(j));
+                int start = isRemoved ? removedRuns.rangeStart(i) : addedRuns.rangeStart(j);
+                int end = isRemoved ? removedRuns.rangeEnd(i++) : addedRuns.rangeEnd(j++);
+
+                // the position of the run in the selection after the change
+                int from = selected.rank(start);
+                if (n == 0 || from != tos[n - 1]) {
+                    froms[n] = from;
+                    tos[n] = from;
+                    removed[n++] = new IndexRangeSet();
+                }
+                if (isRemoved) {
+                    removed[n - 1].set(start, end);
+                } else {
+                    tos[n - 1] += end - start;
+                }
+            }
+            size = n;
+        }
+
+        @Override public boolean next() {
+            if (cursor < size) {
+                cursor++;
+            }
+            return cursor < size;
+        }
+
+        @Override public void reset() {
+            cursor = -1;
+        }
+
+        @Override public int getFrom() {
+            checkState();
+            return froms[cursor];
+        }
+
+        @Override public int getTo() {
+            checkState();
+            return tos[cursor];
+        }
+
+        @Override public List<Integer> getRemoved() {
+            checkState();
+            return removed[cursor].asList();
+        }
+
+        @Override protected int[] getPermutation() {
+            checkState();
+            return new int[0];
+        }
+
+        private void checkState() {
+            if (cursor < 0 || cursor >= size) {
+                throw new IllegalStateException("Invalid Change state: next() must be called before inspecting the Change.");
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package tpv.fxcontrol;
 
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -14,15 +15,12 @@ import java.util.List;
 public class TableViewFilterable<T> extends TableView<T> implements CollectionFilterable<T> {
 
     private final FilterMediator<T> mediator;
+    private final FilteredItems<T> filteredItems;
+    private final FilterDebouncer debouncer;
     private final StringProperty filter = new SimpleStringProperty() {
         @Override
         protected void invalidated() {
-            if (get().isEmpty()) {
-                reset();
-                return;
-            }
-
-            doFilter(get());
+            debouncer.request();
         }
     };
 
@@ -33,6 +31,8 @@ public class TableViewFilterable<T> extends TableView<T> implements CollectionFi
 
     public TableViewFilterable() {
         mediator = new FilterMediator(FXCollections.observableArrayList());
+        filteredItems = new FilteredItems<>(mediator, this::getItems);
+        debouncer = new FilterDebouncer(this::applyFilter, filteredItems::cancel);
         mediator.sourceProperty().addListener((observable, oldValue, newValue) -> {
             doFilter(getFilter());
         });
@@ -52,9 +52,24 @@ public class TableViewFilterable<T> extends TableView<T> implements CollectionFi
         return filter;
     }
 
+    @Override
+    public final ObjectProperty<FilterDebounce> filterDebounceProperty() {
+        return debouncer.policyProperty();
+    }
+
+    private void applyFilter() {
+        String filter = getFilter();
+        if (filter == null || filter.isEmpty()) {
+            reset();
+            return;
+        }
+
+        doFilter(filter);
+    }
+
     @Override
     public void doFilter(String filter) {
-        TableViewFilterable.this.getItems().setAll(getMediator().filter(filter));
+        filteredItems.filter(filter);
     }
 
 
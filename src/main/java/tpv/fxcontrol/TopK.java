@@ -0,0 +1,79 @@
+package tpv.fxcontrol;
+
+import java.util.Arrays;
+
+/**
+ * The best scored matches seen so far, at most limit of them. Each match is
+ * packed into a long, the score in the high half and the inverted position in
+ * the low half, so the natural order of the longs ranks by score and then by
+ * source order, and the root of the min-heap is the match the next better one
+ * replaces.
+ * <p>
+ * This class is package private, it is only used by {@link FilterMediator}.
+ */
+final class TopK {
+
+    private final int limit;
+    private long[] heap = new long[16];
+    private int size;
+
+    TopK(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Keeps the match if fewer than limit were offered or it ranks above the
+     * lowest one kept, which it then replaces.
+     */
+    void offer(int score, int position) {
+        offer(((long) score << 32) | (Integer.MAX_VALUE - position));
+    }
+
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.heap[i]);
+        }
+    }
+
+    private void offer(long match) {
+        if (size < limit) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, Math.min(limit, size * 2));
+            }
+            int i = size++;
+            while (i > 0 && heap[(i - 1) >>> 1] > match) {
+                heap[i] = heap[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            heap[i] = match;
+        } else if (limit > 0 && match > heap[0]) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= match) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = match;
+        }
+    }
+
+    // the source positions of the matches, best first
+    int[] positions() {
+        long[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted);
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = Integer.MAX_VALUE - (int) sorted[size - 1 - i];
+        }
+        return positions;
+    }
+}
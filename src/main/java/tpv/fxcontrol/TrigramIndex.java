@@ -0,0 +1,304 @@
+package tpv.fxcontrol;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index from the trigrams (three consecutive chars) of the search
+ * keys of a {@link FilterMediator} to the elements whose keys contain them.
+ * A key can only contain a query of three or more chars if it contains every
+ * trigram of the query, so intersecting the postings of those trigrams gives
+ * the candidates a substring query has to verify, instead of every key.
+ * <p>
+ * Every element gets an id when it is inserted, which it keeps while other
+ * elements are inserted or removed around it. Postings hold ids, so they never
+ * shift; ids are mapped back to source positions when a query needs them,
+ * and that map is only rebuilt after the source changed. Ids of removed
+ * elements are not reused, so the index compacts itself once most ids are
+ * dead.
+ * <p>
+ * This class is package private, it is only used by {@link FilterMediator}.
+ */
+final class TrigramIndex {
+
+    // rough JVM object sizes used by memoryUsage()
+    private static final int OBJECT_HEADER = 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int MAP_ENTRY = 32 + 24;
+
+    // compact once this many ids are dead and they outnumber the live ones
+    private static final int MIN_DEAD_IDS_TO_COMPACT = 4096;
+
+    private final FilterIndex format;
+
+    private final Map<Long, Posting> postings = new HashMap<>();
+
+    // the id of the element at each source position
+    private int[] ids = new int[16];
+    private int size;
+    private int nextId;
+
+    // the source position of each id, -1 for removed ids, valid if not dirty
+    private int[] positions = new int[0];
+    private boolean positionsDirty = true;
+
+    TrigramIndex(FilterIndex format) {
+        this.format = format;
+    }
+
+    /**
+     * Rebuilds the index for the given keys, in source order.
+     */
+    void rebuild(List<String> keys) {
+        postings.clear();
+        size = 0;
+        nextId = 0;
+        ids = new int[Math.max(16, keys.size())];
+        positionsDirty = true;
+        insert(0, keys);
+    }
+
+    /**
+     * Indexes the keys of the elements inserted at the given source position.
+     */
+    void insert(int position, List<String> keys) {
+        int count = keys.size();
+        if (size + count > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(size + count, ids.length * 2));
+        }
+        System.arraycopy(ids, position, ids, position + count, size - position);
+        size += count;
+
+        for (int i = 0; i < count; i++) {
+            int id = nextId++;
+            ids[position + i] = id;
+            for (long trigram : trigrams(keys.get(i))) {
+                postings.computeIfAbsent(trigram, t -> newPosting()).add(id);
+            }
+        }
+        positionsDirty = true;
+    }
+
+    /**
+     * Drops the elements removed from the given source position, with the
+     * keys they had.
+     */
+    void remove(int position, List<String> keys) {
+        int count = keys.size();
+        for (int i = 0; i < count; i++) {
+            int id = ids[position + i];
+            for (long trigram : trigrams(keys.get(i))) {
+                Posting posting = postings.get(trigram);
+                posting.remove(id);
+                if (posting.size() == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+        System.arraycopy(ids, position + count, ids, position, size - position - count);
+        size -= count;
+        positionsDirty = true;
+    }
+
+    /**
+     * Moves the elements of the source positions [from, to) to
+     * {@code permutation[i - from]}.
+     */
+    void permute(int from, int to, int[] permutation) {
+        int[] moved = Arrays.copyOfRange(ids, from, to);
+        for (int i = from; i < to; i++) {
+            ids[permutation[i - from]] = moved[i - from];
+        }
+        positionsDirty = true;
+    }
+
+    /**
+     * Returns true if the index should be rebuilt because most of its ids
+     * belong to removed elements.
+     */
+    boolean needsCompaction() {
+        int dead = nextId - size;
+        return dead >= MIN_DEAD_IDS_TO_COMPACT && dead > size;
+    }
+
+    /**
+     * Returns the ascending source positions of the elements whose keys
+     * contain every trigram of the given normalized query, or null if the
+     * query is too short to use the index. The keys still have to be checked
+     * against the query itself.
+     */
+    int[] candidates(String query) {
+        long[] trigrams = trigrams(query);
+        if (trigrams.length == 0) {
+            return null;
+        }
+
+        Posting[] lists = new Posting[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            lists[i] = postings.get(trigrams[i]);
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+
+        // walk the shortest posting list and probe the others
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] candidateIds = lists[0].toArray();
+        int count = 0;
+        for (int id : candidateIds) {
+            boolean all = true;
+            for (int i = 1; i < lists.length && all; i++) {
+                all = lists[i].contains(id);
+            }
+            if (all) {
+                candidateIds[count++] = id;
+            }
+        }
+
+        updatePositions();
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = positions[candidateIds[i]];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns an estimate of the heap used by the index, in bytes.
+     */
+    long memoryUsage() {
+        long bytes = OBJECT_HEADER + 2L * ARRAY_HEADER + 4L * ids.length + 4L * positions.length;
+        for (Posting posting : postings.values()) {
+            bytes += MAP_ENTRY + posting.memoryUsage();
+        }
+        return bytes;
+    }
+
+    private void updatePositions() {
+        if (!positionsDirty) {
+            return;
+        }
+        if (positions.length < nextId) {
+            positions = new int[Math.max(nextId, positions.length * 2)];
+        }
+        Arrays.fill(positions, 0, nextId, -1);
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = i;
+        }
+        positionsDirty = false;
+    }
+
+    private Posting newPosting() {
+        return format == FilterIndex.INT_ARRAY ? new IntArrayPosting() : new BitSetPosting();
+    }
+
+    // the distinct trigrams of a key, each packed into the low 48 bits of a long
+    private static long[] trigrams(String key) {
+        int count = key.length() - 2;
+        if (count <= 0) {
+            return new long[0];
+        }
+        long[] trigrams = new long[count];
+        for (int i = 0; i < count; i++) {
+            trigrams[i] = ((long) key.charAt(i) << 32) | ((long) key.charAt(i + 1) << 16) | key.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (trigrams[i] != trigrams[distinct - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private interface Posting {
+        void add(int id);
+        void remove(int id);
+        boolean contains(int id);
+        int size();
+        int[] toArray();
+        long memoryUsage();
+    }
+
+    /*
+     * Ids in a sorted int array. Ids are handed out in ascending order, so
+     * adding appends; compact for the rare trigrams of a large source.
+     */
+    private static final class IntArrayPosting implements Posting {
+        private int[] ids = new int[4];
+        private int size;
+
+        @Override public void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            ids[size++] = id;
+        }
+
+        @Override public void remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                size--;
+            }
+        }
+
+        @Override public boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        @Override public long memoryUsage() {
+            return OBJECT_HEADER + ARRAY_HEADER + 4L * ids.length;
+        }
+    }
+
+    /*
+     * Ids in a bitset. Constant time probes and compact for the common
+     * trigrams of a large source.
+     */
+    private static final class BitSetPosting implements Posting {
+        private final BitSet ids = new BitSet();
+        private int size;
+
+        @Override public void add(int id) {
+            ids.set(id);
+            size++;
+        }
+
+        @Override public void remove(int id) {
+            if (ids.get(id)) {
+                ids.clear(id);
+                size--;
+            }
+        }
+
+        @Override public boolean contains(int id) {
+            return ids.get(id);
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public int[] toArray() {
+            return ids.stream().toArray();
+        }
+
+        @Override public long memoryUsage() {
+            return 2L * OBJECT_HEADER + ARRAY_HEADER + ids.size() / 8;
+        }
+    }
+}
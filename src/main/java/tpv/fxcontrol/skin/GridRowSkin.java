@@ -45,6 +45,17 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
         // Calling updateCells is handled by GridRow if the index is updated.
         registerChangeListener(getSkinnable().widthProperty(), e -> updateCells());
         registerChangeListener(getSkinnable().heightProperty(), e -> updateCells());
+
+        // Cell size and spacing changes only need a new layout of this row,
+        // the cells themselves are kept.
+        GridView<T> gridView = getSkinnable().getGridView();
+        if (gridView != null) {
+            registerChangeListener(gridView.cellWidthProperty(), e -> getSkinnable().requestLayout());
+            registerChangeListener(gridView.cellHeightProperty(), e -> getSkinnable().requestLayout());
+            registerChangeListener(gridView.horizontalCellSpacingProperty(), e -> getSkinnable().requestLayout());
+            registerChangeListener(gridView.verticalCellSpacingProperty(), e -> getSkinnable().requestLayout());
+            registerChangeListener(gridView.cellHeightFactoryProperty(), e -> getSkinnable().requestLayout());
+        }
     }
     
     /**
@@ -62,14 +73,19 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
         
     /**
      *  Update all cells
-     *  <p>Cells are only created when needed and re-used when possible.</p>
+     *  <p>Cells are only created when needed and re-used when possible. Missing
+     *  cells are borrowed from the cell pool of the {@link GridViewSkin} and
+     *  extra cells are returned to it, so that cells move between rows instead
+     *  of being created and garbage-collected.</p>
      */
+    @SuppressWarnings("unchecked")
     public void updateCells() {
         int rowIndex = getSkinnable().getIndex();
         if (rowIndex >= 0) {
             GridView<T> gridView = getSkinnable().getGridView();
+            GridViewSkin<T> gridViewSkin = (GridViewSkin<T>) gridView.getSkin();
 
-            int maxCellsInRow = ((GridViewSkin<?>)gridView.getSkin()).computeMaxCellsInRow();
+            int maxCellsInRow = gridViewSkin.computeMaxCellsInRow();
             int totalCellsInGrid = gridView.getItems().size();
             int startCellIndex = rowIndex * maxCellsInRow;
             int endCellIndex = startCellIndex + maxCellsInRow - 1;
@@ -80,7 +96,7 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
                     // Check if we can re-use a cell at this index or create a new one
                     GridCell<T> cell = getCellAtIndex(cacheIndex);
                     if( cell == null ) {
-                        cell = createCell();
+                        cell = gridViewSkin.borrowCell();
                         getChildren().add(cell);
                     }
 //                    cell.updateIndex(-1); //Thanhpv
@@ -91,34 +107,17 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
             }
             
             // In case we are re-using a row that previously had more cells than
-            // this one, we need to remove the extra cells that remain
-            getChildren().remove(cacheIndex, getChildren().size());
-        }
-    }
-
-    private GridCell<T> createCell() {
-        GridView<T> gridView = getSkinnable().gridViewProperty().get();
-        GridCell<T> cell;
-        if (gridView.getCellFactory() != null) {
-            cell = gridView.getCellFactory().call(gridView);
-        } else {
-            cell = createDefaultCellImpl();
-        }
-        cell.updateGridView(gridView);
-        return cell;
-    }
+            // this one, we need to hand the extra cells that remain back to the pool
+            for (int i = getChildren().size() - 1; i >= cacheIndex; i--) {
+                GridCell<T> cell = (GridCell<T>) getChildren().remove(i);
+                gridViewSkin.returnCell(cell);
+            }
 
-    private GridCell<T> createDefaultCellImpl() {
-        return new GridCell<T>() {
-            @Override protected void updateItem(T item, boolean empty) {
-                super.updateItem(item, empty);
-                if(empty) {
-                    setText(""); //$NON-NLS-1$
-                } else {
-                    setText(item.toString());
-                }
+            // with a cell height factory the height of this row depends on its items
+            if (gridView.getCellHeightFactory() != null) {
+                getSkinnable().requestLayout();
             }
-        };
+        }
     }
     
     @Override protected double computeMinHeight(double width, double topInset, double rightInset, double bottomInset, double leftInset) {
@@ -129,11 +128,16 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
         return Double.MAX_VALUE;
     }
 
+    @SuppressWarnings("unchecked")
     @Override protected double computePrefHeight(double width, double topInset, double rightInset, double bottomInset, double leftInset) {
         GridView<T> gv = getSkinnable().gridViewProperty().get();
+        if (gv.getCellHeightFactory() != null && gv.getSkin() instanceof GridViewSkin) {
+            return ((GridViewSkin<T>) gv.getSkin()).computeRowHeight(getSkinnable().getIndex());
+        }
         return gv.getCellHeight() + gv.getVerticalCellSpacing() * 2;
     }
 
+    @SuppressWarnings("unchecked")
     @Override protected void layoutChildren(double x, double y, double w, double h) {
 //        double currentWidth = getSkinnable().getWidth();
         double cellWidth = getSkinnable().gridViewProperty().get().getCellWidth();
@@ -155,9 +159,19 @@ public class GridRowSkin<T> extends CellSkinBase<GridRow<T>> {
 //            }
 //        }
 
+        // with a cell height factory every cell is as high as its item requires, top aligned
+        GridView<T> gridView = getSkinnable().gridViewProperty().get();
+        GridViewSkin<T> gridViewSkin = gridView.getCellHeightFactory() != null && gridView.getSkin() instanceof GridViewSkin
+                ? (GridViewSkin<T>) gridView.getSkin() : null;
+
         for (Node child : getChildren()) {
+            double height = cellHeight;
+            if (gridViewSkin != null) {
+                GridCell<T> cell = (GridCell<T>) child;
+                height = cell.isEmpty() ? cellHeight : gridViewSkin.computeCellHeight(cell.getIndex());
+            }
             child.relocate(xPos + horizontalCellSpacing, yPos + verticalCellSpacing);
-            child.resize(cellWidth, cellHeight);
+            child.resize(cellWidth, height);
             xPos = xPos + horizontalCellSpacing + cellWidth + horizontalCellSpacing;
         }
     }
@@ -27,21 +27,60 @@
 package tpv.fxcontrol.skin;
 
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.WeakListChangeListener;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.skin.VirtualContainerBase;
 import javafx.scene.control.skin.VirtualFlow;
+import javafx.util.Callback;
+import tpv.fxcontrol.GridCell;
 import tpv.fxcontrol.GridRow;
 import tpv.fxcontrol.GridView;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 
 public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T>> {
 
     private VirtualFlow<GridRow<T>> flow;
 
+    private int maxCellsInRow = -1;
+
+    private long columnCountUpdates;
+
+    // how far past a column boundary a resize has to widen the rows before
+    // the grid gains a column
+    private static final double COLUMN_WIDTH_MARGIN = 8;
+
+    // the flow width and cell width the column count was last computed for
+    private double lastFlowWidth = Double.NaN;
+    private double lastCellWidth = Double.NaN;
+
+    // spare cells handed back by rows which had more cells than they need
+    private final ArrayDeque<GridCell<T>> cellPool = new ArrayDeque<>();
+
+    // the cached item heights and the row heights if GridView.cellHeightFactory
+    // is set, else null
+    private RowHeights rowHeights;
+
+    // how far ahead of the viewport rows are prefetched per row/s of scroll velocity
+    private static final double PREFETCH_LOOK_AHEAD_SECONDS = 0.25;
+
+    // the rows already announced to the prefetch handler, the first visible row
+    // and when it last changed, and the scroll direction
+    private int prefetchedFromRow = -1;
+    private int prefetchedToRow = -1;
+    private int lastFirstVisibleRow = -1;
+    private long lastScrollTime;
+    private int scrollDirection = 1;
+
     private final ListChangeListener<T> gridViewItemsListener = change -> {
-        updateItemCount();
+        updateItemCount(change);
         getSkinnable().requestLayout();
     };
 
@@ -65,24 +104,31 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
 
         // Register listeners
         registerChangeListener(control.itemsProperty(), e -> updateGridViewItems());
-        registerChangeListener(control.cellFactoryProperty(), e ->  getFlow().recreateCells());
+        registerChangeListener(control.cellFactoryProperty(), e -> {
+            cellPool.clear();
+            getFlow().recreateCells();
+        });
         registerChangeListener(control.parentProperty(), e -> {
             if (getSkinnable().getParent() != null && getSkinnable().isVisible()) {
                 getSkinnable().requestLayout();
             }
         });
-        registerChangeListener(control.cellHeightProperty(), e -> getFlow().recreateCells());
-        registerChangeListener(control.cellWidthProperty(), e -> {
-            updateItemCount();
-            getFlow().recreateCells();
-        });
-        registerChangeListener(control.horizontalCellSpacingProperty(), e -> {
-            updateItemCount();
-            getFlow().recreateCells();
+        // Cell size and spacing changes re-use the existing rows and cells: the
+        // rows lay out their cells again by themselves (see GridRowSkin), the
+        // flow only has to measure the rows again, and the rows are re-indexed
+        // when the column count changes.
+        registerChangeListener(control.cellHeightProperty(), e -> getFlow().reconfigureCells());
+        registerChangeListener(control.cellWidthProperty(), e -> updateColumnCount());
+        registerChangeListener(control.horizontalCellSpacingProperty(), e -> updateColumnCount());
+        registerChangeListener(control.verticalCellSpacingProperty(), e -> getFlow().reconfigureCells());
+        registerChangeListener(control.cellHeightFactoryProperty(), e -> {
+            rebuildRowHeights();
+            getFlow().reconfigureCells();
         });
-        registerChangeListener(control.verticalCellSpacingProperty(), e -> getFlow().recreateCells());
-        registerChangeListener(control.widthProperty(), e ->  updateItemCount());
+        registerChangeListener(control.widthProperty(), e -> updateColumnCount());
+        registerChangeListener(getFlow().verticalScrollBarVisibleProperty(), e -> updateColumnCount());
         registerChangeListener(control.heightProperty(), e ->  updateItemCount());
+        registerChangeListener(flow.positionProperty(), e -> prefetch());
         Platform.runLater(()->{
             updateGridViewItems();
             updateItemCount();
@@ -104,16 +150,17 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
             getSkinnable().getItems().addListener(weakGridViewItemsListener);
         }
 
+        rebuildRowHeights();
         updateItemCount();
         getFlow().recreateCells();
         getSkinnable().requestLayout();
     }
 
     @Override protected void layoutChildren(double x, double y, double w, double h) {
-        double x1 = getSkinnable().getInsets().getLeft();
-        double y1 = getSkinnable().getInsets().getTop();
-        double w1 = getSkinnable().getWidth() - (getSkinnable().getInsets().getLeft() + getSkinnable().getInsets().getRight());
-        double h1 = getSkinnable().getHeight() - (getSkinnable().getInsets().getTop() + getSkinnable().getInsets().getBottom());
+        double x1 = snappedLeftInset();
+        double y1 = snappedTopInset();
+        double w1 = computeFlowWidth();
+        double h1 = getSkinnable().getHeight() - (snappedTopInset() + snappedBottomInset());
 
         flow.resizeRelocate(x1, y1, w1, h1);
     }
@@ -135,9 +182,20 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
         if (flow == null)
             return;
 
+        updateMaxCellsInRow();
+        resetPrefetch();
         int oldCount = flow.getCellCount();
         int newCount = getItemCount();
 
+        if (rowHeights != null) {
+            List<T> items = getSkinnable().getItems();
+            if (items == null || rowHeights.getItemCount() != items.size()) {
+                rebuildRowHeights();
+            } else {
+                rowHeights.setColumns(maxCellsInRow);
+            }
+        }
+
         if (newCount != oldCount) {
             flow.setCellCount(newCount);
             getFlow().rebuildCells();
@@ -148,26 +206,297 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
         getSkinnable().requestLayout();
     }
 
+    /**
+     *  Updates the row count after a change of the items list.
+     *  <p>Unlike {@link #updateItemCount()} the cells are not rebuilt: the
+     *  VirtualFlow keeps its rows when the row count changes, and only the
+     *  visible rows holding an item touched by the change are re-indexed.
+     *  Appending to the tail therefore only refreshes the last row.</p>
+     *  @param change The change of the items list
+     */
+    protected void updateItemCount(ListChangeListener.Change<? extends T> change) {
+        if (flow == null)
+            return;
+
+        int fromIndex = Integer.MAX_VALUE;
+        int toIndex = -1;
+        while (change.next()) {
+            updateRowHeights(change);
+            fromIndex = Math.min(fromIndex, change.getFrom());
+            if (change.wasPermutated() || change.wasUpdated()
+                    || (change.wasReplaced() && change.getAddedSize() == change.getRemovedSize())) {
+                toIndex = Math.max(toIndex, change.getTo());
+            } else {
+                // additions and removals shift every item that follows
+                toIndex = Integer.MAX_VALUE;
+            }
+        }
+        change.reset();
+        resetPrefetch();
+
+        int newCount = getItemCount();
+        computeMaxCellsInRow();
+        int fromRow = fromIndex / maxCellsInRow;
+        int toRow = toIndex == Integer.MAX_VALUE ? newCount - 1 : (toIndex - 1) / maxCellsInRow;
+
+        if (newCount != flow.getCellCount()) {
+            flow.setCellCount(newCount);
+        }
+
+        if (fromIndex <= toIndex) {
+            updateRows(fromRow, toRow);
+        }
+        getSkinnable().requestLayout();
+    }
+
+    /**
+     *  Returns the height of the given row. Without a cell height factory all
+     *  rows have the same height; with one, every row is as high as its
+     *  tallest cell, read from the cached item heights.
+     *  @param row The index of the row
+     *  @return The height of the row, including the vertical cell spacing
+     */
+    public double computeRowHeight(int row) {
+        GridView<T> gridView = getSkinnable();
+        double height = rowHeights == null ? gridView.getCellHeight()
+                : rowHeights.rowHeight(row, gridView.getCellHeight());
+        return height + gridView.getVerticalCellSpacing() * 2;
+    }
+
+    /**
+     *  Scrolls the grid so that the row holding the given item is at the top
+     *  of the viewport.
+     *  @param index The index of the item
+     */
+    public void scrollToIndex(int index) {
+        if (index < 0 || flow == null) {
+            return;
+        }
+        flow.scrollToTop(index / computeMaxCellsInRow());
+    }
+
+    /**
+     *  Announces the items of the rows just past the viewport, in the scroll
+     *  direction, to the prefetch handler of the GridView. The window is
+     *  {@link GridView#getPrefetchRowCount()} rows, plus the rows the current
+     *  scroll velocity covers in {@value #PREFETCH_LOOK_AHEAD_SECONDS}s (at most
+     *  three times the prefetch row count). Rows are announced only once until
+     *  the items or the columns change.
+     */
+    private void prefetch() {
+        GridView<T> gridView = getSkinnable();
+        Consumer<List<T>> handler = gridView.getPrefetchHandler();
+        int windowRows = gridView.getPrefetchRowCount();
+        GridRow<T> firstRow = flow.getFirstVisibleCell();
+        GridRow<T> lastRow = flow.getLastVisibleCell();
+        if (handler == null || windowRows <= 0 || firstRow == null || lastRow == null) {
+            return;
+        }
+
+        // the velocity is measured between changes of the first visible row,
+        // position events within a row would make it look much faster
+        long now = System.nanoTime();
+        int firstVisibleRow = firstRow.getIndex();
+        double rowsPerSecond = 0;
+        if (firstVisibleRow != lastFirstVisibleRow) {
+            if (lastFirstVisibleRow >= 0) {
+                int delta = firstVisibleRow - lastFirstVisibleRow;
+                scrollDirection = delta > 0 ? 1 : -1;
+                double seconds = (now - lastScrollTime) / 1e9;
+                rowsPerSecond = seconds > 0 ? Math.abs(delta) / seconds : 0;
+            }
+            lastFirstVisibleRow = firstVisibleRow;
+            lastScrollTime = now;
+        }
+
+        int lookAhead = windowRows + (int) Math.min(rowsPerSecond * PREFETCH_LOOK_AHEAD_SECONDS, windowRows * 3);
+        int rowCount = getItemCount();
+        int fromRow;
+        int toRow;
+        if (scrollDirection > 0) {
+            fromRow = lastRow.getIndex() + 1;
+            toRow = Math.min(rowCount - 1, lastRow.getIndex() + lookAhead);
+        } else {
+            fromRow = Math.max(0, firstVisibleRow - lookAhead);
+            toRow = firstVisibleRow - 1;
+        }
+
+        // skip the rows which were already announced
+        if (prefetchedFromRow >= 0 && fromRow <= prefetchedToRow && toRow >= prefetchedFromRow) {
+            if (scrollDirection > 0) {
+                fromRow = Math.max(fromRow, prefetchedToRow + 1);
+            } else {
+                toRow = Math.min(toRow, prefetchedFromRow - 1);
+            }
+            if (fromRow > toRow) {
+                return;
+            }
+            prefetchedFromRow = Math.min(prefetchedFromRow, fromRow);
+            prefetchedToRow = Math.max(prefetchedToRow, toRow);
+        } else {
+            if (fromRow > toRow) {
+                return;
+            }
+            prefetchedFromRow = fromRow;
+            prefetchedToRow = toRow;
+        }
+
+        List<T> items = gridView.getItems();
+        computeMaxCellsInRow();
+        int fromIndex = fromRow * maxCellsInRow;
+        int toIndex = Math.min(items.size(), (toRow + 1) * maxCellsInRow);
+        if (fromIndex < toIndex) {
+            handler.accept(new ArrayList<>(items.subList(fromIndex, toIndex)));
+        }
+    }
+
+    private void resetPrefetch() {
+        prefetchedFromRow = -1;
+        prefetchedToRow = -1;
+    }
+
+    /**
+     *  Asks the cell height factory for the height of every item again, or
+     *  drops the cached heights if there is no factory.
+     */
+    private void rebuildRowHeights() {
+        GridView<T> gridView = getSkinnable();
+        List<T> items = gridView.getItems();
+        if (gridView.getCellHeightFactory() == null || items == null) {
+            rowHeights = null;
+            return;
+        }
+
+        rowHeights = new RowHeights();
+        rowHeights.setAll(computeItemHeights(items), items.size(), computeMaxCellsInRow());
+    }
+
+    // applies one step of a change of the items to the cached heights, asking
+    // the factory only for the added and updated items
+    private void updateRowHeights(ListChangeListener.Change<? extends T> change) {
+        if (rowHeights == null) {
+            return;
+        }
+        if (change.wasPermutated()) {
+            int from = change.getFrom();
+            int[] permutation = new int[change.getTo() - from];
+            for (int i = from; i < change.getTo(); i++) {
+                permutation[i - from] = change.getPermutation(i);
+            }
+            rowHeights.permute(from, change.getTo(), permutation);
+        } else if (change.wasUpdated()) {
+            List<? extends T> updated = change.getList().subList(change.getFrom(), change.getTo());
+            rowHeights.replace(change.getFrom(), updated.size(), computeItemHeights(updated));
+        } else {
+            rowHeights.replace(change.getFrom(), change.getRemovedSize(),
+                    computeItemHeights(change.getAddedSubList()));
+        }
+    }
+
+    // the factory heights of the items, NaN where it gives none
+    private double[] computeItemHeights(List<? extends T> items) {
+        Callback<T, Double> factory = getSkinnable().getCellHeightFactory();
+        double[] heights = new double[items.size()];
+        int i = 0;
+        for (T item : items) {
+            Double height = item == null ? null : factory.call(item);
+            heights[i++] = height == null ? Double.NaN : height;
+        }
+        return heights;
+    }
+
+    /**
+     *  Returns the height of the cell showing the item at the given index
+     *  @param index The index of the item
+     *  @return The cached height from the cell height factory, or the cell height
+     */
+    public double computeCellHeight(int index) {
+        double cellHeight = getSkinnable().getCellHeight();
+        return rowHeights == null ? cellHeight : rowHeights.itemHeight(index, cellHeight);
+    }
+
     /**
      *  Returns the max number of cell per row
      *  @return Max cell number per row 
      */
     public int computeMaxCellsInRow() {
-        return Math.max((int) Math.floor(computeRowWidth() / computeCellWidth()), 1);
+        if (maxCellsInRow < 0) {
+            updateMaxCellsInRow();
+        }
+        return maxCellsInRow;
+    }
+
+    /**
+     *  Returns how many times the number of cells per row has changed since
+     *  this skin was created. Each change re-indexes the rows of the grid.
+     *  @return The number of column count changes
+     */
+    public final long getColumnCountUpdateCount() {
+        return columnCountUpdates;
+    }
+
+    /**
+     *  Recomputes the number of cells per row.
+     *  <p>The column count shrinks as soon as a column no longer fits, but it
+     *  only grows by a resize once the rows are {@value #COLUMN_WIDTH_MARGIN}
+     *  pixels wider than the extra columns need, so a resize back and forth
+     *  around a column boundary does not re-index the rows every time.</p>
+     *  <p>When the vertical scrollbar disappears while the flow and cell
+     *  widths stay the same, the column count only grows if the extra columns
+     *  would still fit with the scrollbar back. Otherwise the fewer rows of
+     *  the wider grid could bring the scrollbar back and flip the column count
+     *  back and forth. Cell width and spacing changes are not held back.</p>
+     *  @return true if the number of cells per row has changed
+     */
+    private boolean updateMaxCellsInRow() {
+        double flowWidth = computeFlowWidth();
+        double rowWidth = computeRowWidth();
+        double cellWidth = computeCellWidth();
+        int columns = Math.max((int) Math.floor(rowWidth / cellWidth), 1);
+
+        if (maxCellsInRow > 0 && columns > maxCellsInRow && cellWidth == lastCellWidth) {
+            if (flowWidth == lastFlowWidth) {
+                if (!getFlow().isVerticalScrollBarVisible()) {
+                    double scrollBarWidth = getFlow().getVerticalScrollBarPrefWidth();
+                    columns = Math.max(maxCellsInRow, (int) Math.floor((rowWidth - scrollBarWidth) / cellWidth));
+                }
+            } else {
+                columns = Math.max(maxCellsInRow, (int) Math.floor((rowWidth - COLUMN_WIDTH_MARGIN) / cellWidth));
+            }
+        }
+        lastFlowWidth = flowWidth;
+        lastCellWidth = cellWidth;
+
+        if (columns == maxCellsInRow) {
+            return false;
+        }
+        maxCellsInRow = columns;
+        columnCountUpdates++;
+        return true;
+    }
+
+    private void updateColumnCount() {
+        if (updateMaxCellsInRow()) {
+            updateItemCount();
+        }
     }
 
     /**
-     *  Returns the width of a row
-     *  (should be GridView.width - GridView.Scrollbar.width)
+     *  Returns the width of a row, which is the width of the VirtualFlow
+     *  viewport (the flow without its vertical scrollbar)
      *  @return Computed width of a row 
      */
     protected double computeRowWidth() {
         // Fix for #98 : width calculation should take the scrollbar size
         // into account
-        
-        // TODO: need to figure out how to get the real scrollbar width and
-        // replace the 18 value
-        return getSkinnable().getWidth() - 18;
+        return computeFlowWidth() - getFlow().getVerticalScrollBarWidth();
+    }
+
+    // the width layoutChildren gives the flow; read from the control and not
+    // from the flow, which is only resized in the next layout pass after the
+    // control width changed
+    private double computeFlowWidth() {
+        return getSkinnable().getWidth() - (snappedLeftInset() + snappedRightInset());
     }
 
     /**
@@ -178,8 +507,32 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
         return getSkinnable().cellWidthProperty().doubleValue() + (getSkinnable().horizontalCellSpacingProperty().doubleValue() * 2);
     }
 
+    /**
+     *  Re-indexes the visible rows. Only the live cells of the VirtualFlow are
+     *  visited, so the cost scales with the viewport and not with the row count.
+     *  @param rowCount The number of rows of the grid
+     */
     protected void updateRows(int rowCount) {
-        for (int i = 0; i < rowCount; i++) {
+        updateRows(0, rowCount - 1);
+    }
+
+    /**
+     *  Re-indexes the visible rows between the given row indices (inclusive).
+     *  Rows outside of the viewport are updated by the VirtualFlow when they
+     *  are scrolled into view.
+     *  @param fromRow The first row to update
+     *  @param toRow The last row to update
+     */
+    protected void updateRows(int fromRow, int toRow) {
+        GridRow<T> firstRow = flow.getFirstVisibleCell();
+        GridRow<T> lastRow = flow.getLastVisibleCell();
+        if (firstRow == null || lastRow == null) {
+            return;
+        }
+
+        int from = Math.max(fromRow, firstRow.getIndex());
+        int to = Math.min(toRow, lastRow.getIndex());
+        for (int i = from; i <= to; i++) {
             GridRow<T> row = flow.getVisibleCell(i);
             if (row != null) {
                 // We do not have to force a change of the index by setting the index to -1
@@ -195,6 +548,60 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
         return 0;
     }
 
+    /**
+     *  Returns a cell for a row, taken from the pool of spare cells if possible.
+     *  The cell factory is only called when the pool is empty.
+     *  @return A cell which does not belong to any row
+     */
+    public GridCell<T> borrowCell() {
+        GridCell<T> cell = cellPool.pollFirst();
+        return cell != null ? cell : createGridCell();
+    }
+
+    /**
+     *  Hands a cell that was removed from its row back to the pool. The pool
+     *  never holds more cells than fit into the viewport, any other cell is
+     *  left to the garbage collector.
+     *  @param cell A cell which does not belong to any row anymore
+     */
+    public void returnCell(GridCell<T> cell) {
+        cell.updateIndex(-1);
+        if (cellPool.size() < computeCellPoolCapacity()) {
+            cellPool.addFirst(cell);
+        }
+    }
+
+    private int computeCellPoolCapacity() {
+        double rowHeight = getSkinnable().getCellHeight() + getSkinnable().getVerticalCellSpacing() * 2;
+        int visibleRows = rowHeight > 0 ? (int) Math.ceil(flow.getHeight() / rowHeight) + 1 : 1;
+        return computeMaxCellsInRow() * visibleRows;
+    }
+
+    private GridCell<T> createGridCell() {
+        GridView<T> gridView = getSkinnable();
+        GridCell<T> cell;
+        if (gridView.getCellFactory() != null) {
+            cell = gridView.getCellFactory().call(gridView);
+        } else {
+            cell = createDefaultCellImpl();
+        }
+        cell.updateGridView(gridView);
+        return cell;
+    }
+
+    private GridCell<T> createDefaultCellImpl() {
+        return new GridCell<T>() {
+            @Override protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                if(empty) {
+                    setText(""); //$NON-NLS-1$
+                } else {
+                    setText(item.toString());
+                }
+            }
+        };
+    }
+
     private GridRow<T> createCell() {
         GridRow<T> row = new GridRow<>();
         row.updateGridView(getSkinnable());
@@ -221,5 +628,22 @@ public class GridViewSkin<T> extends VirtualContainerBase<GridView<T>, GridRow<T
         public void reconfigureCells(){
             super.reconfigureCells();
         }
+
+        BooleanProperty verticalScrollBarVisibleProperty() {
+            return getVbar().visibleProperty();
+        }
+
+        boolean isVerticalScrollBarVisible() {
+            return getVbar().isVisible();
+        }
+
+        double getVerticalScrollBarWidth() {
+            return isVerticalScrollBarVisible() ? getVerticalScrollBarPrefWidth() : 0;
+        }
+
+        double getVerticalScrollBarPrefWidth() {
+            ScrollBar vbar = getVbar();
+            return vbar.getWidth() > 0 ? vbar.getWidth() : snapSizeX(vbar.prefWidth(-1));
+        }
     }
 }
@@ -0,0 +1,151 @@
+package tpv.fxcontrol.skin;
+
+import java.util.Arrays;
+
+/**
+ * The heights of the items of a GridView with a cell height factory, and the
+ * per-row variable heights of its rows. The height of every item is asked from the factory
+ * once, when the item is added, and cached; the rows are grouped from the
+ * cached heights, so a change of the column count regroups the rows without
+ * calling the factory again. Cell height and vertical spacing changes need no
+ * work at all: items the factory gave no height are resolved against the cell
+ * height when a row height is read.
+ * <p>
+ * This class is package private, it is only used by {@link GridViewSkin}.
+ */
+final class RowHeights {
+
+    // the height the factory gave every item, NaN if it gave none
+    private double[] itemHeights = new double[0];
+    private int itemCount;
+
+    // the number of items per row the rows are grouped by
+    private int columns = 1;
+
+    // the tallest item of every row which has a height, or 0 if there is none
+    private double[] rowMax = new double[0];
+
+    // whether a row holds an item without a height
+    private boolean[] rowHasDefault = new boolean[0];
+
+    private int rowCount;
+
+    /**
+     * Replaces every item height, and groups the rows by the given number of
+     * items per row.
+     */
+    void setAll(double[] heights, int count, int columns) {
+        itemHeights = Arrays.copyOf(heights, Math.max(count, 16));
+        itemCount = count;
+        this.columns = Math.max(1, columns);
+        regroupFrom(0);
+    }
+
+    /**
+     * Replaces the heights of the items [from, from + removedCount) by the
+     * given heights, and regroups the rows from the first changed one. Rows
+     * before it keep their height.
+     */
+    void replace(int from, int removedCount, double[] added) {
+        int newCount = itemCount - removedCount + added.length;
+        if (newCount > itemHeights.length) {
+            itemHeights = Arrays.copyOf(itemHeights, Math.max(newCount, itemHeights.length * 2));
+        }
+        System.arraycopy(itemHeights, from + removedCount, itemHeights, from + added.length,
+                itemCount - from - removedCount);
+        System.arraycopy(added, 0, itemHeights, from, added.length);
+        itemCount = newCount;
+
+        if (removedCount == added.length) {
+            regroup(from / columns, (from + added.length - 1) / columns);
+        } else {
+            regroupFrom(from / columns);
+        }
+    }
+
+    /**
+     * Moves the height of the item at {@code from + i} to
+     * {@code permutation[i]}, and regroups the rows the items moved within.
+     */
+    void permute(int from, int to, int[] permutation) {
+        double[] moved = Arrays.copyOfRange(itemHeights, from, to);
+        for (int i = from; i < to; i++) {
+            itemHeights[permutation[i - from]] = moved[i - from];
+        }
+        regroup(from / columns, (to - 1) / columns);
+    }
+
+    /**
+     * Groups the rows by the given number of items per row, if it changed.
+     */
+    void setColumns(int columns) {
+        columns = Math.max(1, columns);
+        if (columns != this.columns) {
+            this.columns = columns;
+            regroupFrom(0);
+        }
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getItemCount() {
+        return itemCount;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the height of the item, or the default height if the factory
+     * gave it none.
+     */
+    double itemHeight(int index, double defaultHeight) {
+        if (index < 0 || index >= itemCount) {
+            return defaultHeight;
+        }
+        double height = itemHeights[index];
+        return Double.isNaN(height) ? defaultHeight : height;
+    }
+
+    /**
+     * Returns the height of the tallest item of the row, items without a
+     * height counting as the default height.
+     */
+    double rowHeight(int row, double defaultHeight) {
+        if (row < 0 || row >= rowCount) {
+            return defaultHeight;
+        }
+        return rowHasDefault[row] ? Math.max(rowMax[row], defaultHeight) : rowMax[row];
+    }
+
+    private void regroupFrom(int fromRow) {
+        rowCount = (itemCount + columns - 1) / columns;
+        if (rowCount > rowMax.length || rowCount < rowMax.length / 4) {
+            rowMax = Arrays.copyOf(rowMax, rowCount);
+            rowHasDefault = Arrays.copyOf(rowHasDefault, rowCount);
+        }
+        regroup(fromRow, rowCount - 1);
+    }
+
+    private void regroup(int fromRow, int toRow) {
+        for (int row = Math.max(0, fromRow); row <= toRow && row < rowCount; row++) {
+            int from = row * columns;
+            int to = Math.min(from + columns, itemCount);
+            double max = 0;
+            boolean hasDefault = false;
+            for (int i = from; i < to; i++) {
+                double height = itemHeights[i];
+                if (Double.isNaN(height)) {
+                    hasDefault = true;
+                } else {
+                    max = Math.max(max, height);
+                }
+            }
+            rowMax[row] = max;
+            rowHasDefault[row] = hasDefault;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package tpv.fxcontrol;
+
+import javafx.util.Duration;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testfx.api.FxToolkit;
+import org.testfx.util.WaitForAsyncUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilterDebouncerTest {
+
+    private final AtomicInteger runs = new AtomicInteger();
+    private final AtomicInteger cancels = new AtomicInteger();
+    private FilterDebouncer debouncer;
+
+    @BeforeClass
+    public static void startToolkit() throws TimeoutException {
+        FxToolkit.registerPrimaryStage();
+    }
+
+    @Before
+    public void setUp() throws TimeoutException {
+        FxToolkit.setupFixture(() -> debouncer = new FilterDebouncer(runs::incrementAndGet, cancels::incrementAndGet));
+    }
+
+    @Test
+    public void burstOfRequestsRunsOnceAfterTheQuietPeriod() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            debouncer.policyProperty().set(FilterDebounce.of(Duration.millis(100)));
+            for (int i = 0; i < 5; i++) {
+                debouncer.request();
+            }
+        });
+        assertEquals(0, runs.get());
+        // every request drops the pass of the one before
+        assertEquals(5, cancels.get());
+
+        WaitForAsyncUtils.sleep(500, TimeUnit.MILLISECONDS);
+        WaitForAsyncUtils.waitForFxEvents();
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void maxLatencyRunsWhileRequestsKeepComing() throws TimeoutException {
+        FxToolkit.setupFixture(() ->
+                debouncer.policyProperty().set(FilterDebounce.of(Duration.seconds(10), Duration.millis(200))));
+
+        // the quiet period never passes, the max latency does
+        for (int i = 0; i < 10; i++) {
+            FxToolkit.setupFixture(() -> debouncer.request());
+            WaitForAsyncUtils.sleep(50, TimeUnit.MILLISECONDS);
+        }
+        WaitForAsyncUtils.waitForFxEvents();
+        assertTrue(runs.get() >= 1);
+    }
+
+    @Test
+    public void policyChangeRunsThePendingRequest() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            debouncer.policyProperty().set(FilterDebounce.of(Duration.seconds(10)));
+            debouncer.request();
+        });
+        assertEquals(0, runs.get());
+
+        FxToolkit.setupFixture(() -> debouncer.policyProperty().set(FilterDebounce.IMMEDIATE));
+        assertEquals(1, runs.get());
+
+        // nothing is left pending for a later change to run again
+        FxToolkit.setupFixture(() -> debouncer.policyProperty().set(FilterDebounce.of(Duration.seconds(5))));
+        assertEquals(1, runs.get());
+    }
+}
@@ -0,0 +1,106 @@
+package tpv.fxcontrol;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterMatchersTest {
+
+    private static final UnaryOperator<String> UPPER_CASE = s -> s.toUpperCase(Locale.ROOT);
+
+    @Test
+    public void fuzzyMatchesAgreeWithEditDistance() {
+        Random random = new Random(24);
+        for (int allowed = 0; allowed <= 3; allowed++) {
+            for (int i = 0; i < 2000; i++) {
+                String filter = randomText(random, 1 + random.nextInt(6));
+                String key = randomText(random, random.nextInt(12));
+                // as the matcher prepares it, fewer edits than filter chars
+                int maxEdits = Math.min(allowed, filter.length() - 1);
+                FilterMatchers.FuzzyQuery query = new FilterMatchers.FuzzyQuery(filter, maxEdits);
+
+                int edits = substringEditDistance(filter, key);
+                assertEquals(filter + " in " + key, edits <= maxEdits, query.matches(key));
+                int expectedScore = edits <= maxEdits
+                        ? -edits * (key.length() + 1) - key.length()
+                        : FilterMatcher.Query.NO_MATCH;
+                assertEquals(filter + " in " + key, expectedScore, query.score(key));
+            }
+        }
+    }
+
+    @Test
+    public void fuzzyMatchesCharsBeyondAscii() {
+        FilterMatcher.Query query = new FilterMatchers.FuzzyQuery("ÄÖÜ", 1);
+
+        assertTrue(query.matches("XÄÖÜX"));
+        assertTrue(query.matches("ÄXÜ"));
+        assertFalse(query.matches("ÄXX"));
+    }
+
+    @Test
+    public void fuzzyGetsFewerEditsThanTheFilterHasChars() {
+        FilterMatcher.Query query = FilterMatcher.fuzzy(5).prepare("ab", UPPER_CASE);
+
+        // a single edit, not five, or every key with an A or B would match
+        assertTrue(query.matches("XAX"));
+        assertFalse(query.matches("XYZ"));
+    }
+
+    @Test
+    public void fewerEditsRankHigherThenShorterKeys() {
+        FilterMatcher.Query query = new FilterMatchers.FuzzyQuery("ABCD", 1);
+
+        assertTrue(query.score("XXABCDXX") > query.score("ABXD"));
+        assertTrue(query.score("ABCD") > query.score("ABCDX"));
+        assertTrue(query.score("ABXD") > query.score("ABXDX"));
+    }
+
+    @Test
+    public void scoreOfAKeyWhichDoesNotMatch() {
+        FilterMatcher[] matchers = {FilterMatcher.contains(), FilterMatcher.prefix(), FilterMatcher.tokens(),
+                FilterMatcher.regex(), FilterMatcher.fuzzy(1)};
+        for (FilterMatcher matcher : matchers) {
+            FilterMatcher.Query query = matcher.prepare("AB", UPPER_CASE);
+            assertEquals(FilterMatcher.Query.NO_MATCH, query.score("QQQ"));
+            assertTrue(query.score("AB") > FilterMatcher.Query.NO_MATCH);
+        }
+    }
+
+    // the least number of edits turning the filter into a substring of the
+    // key, by dynamic programming: the first row is free, a match may start
+    // anywhere in the key
+    private static int substringEditDistance(String filter, String key) {
+        int[] previous = new int[key.length() + 1];
+        int[] current = new int[key.length() + 1];
+        for (int i = 1; i <= filter.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= key.length(); j++) {
+                int substitution = previous[j - 1] + (filter.charAt(i - 1) == key.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = Integer.MAX_VALUE;
+        for (int distance : previous) {
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('A' + random.nextInt(3)));
+        }
+        return text.toString();
+    }
+}
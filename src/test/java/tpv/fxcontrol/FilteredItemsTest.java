@@ -0,0 +1,228 @@
+package tpv.fxcontrol;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilteredItemsTest {
+
+    private final ObservableList<String> source = FXCollections.observableArrayList();
+    private final ObservableList<String> items = FXCollections.observableArrayList();
+
+    @Test
+    public void narrowingTheFilterOnlyRemovesItems() {
+        source.addAll("alpha", "beta", "gamma", "delta", "alpine", "epsilon");
+        FilteredItems<String> filteredItems = new FilteredItems<>(new FilterMediator<>(source), () -> items);
+        filteredItems.filter("a");
+
+        List<String> added = new ArrayList<>();
+        items.addListener((ListChangeListener<String>) c -> {
+            while (c.next()) {
+                added.addAll(c.getAddedSubList());
+            }
+        });
+        filteredItems.filter("al");
+
+        assertEquals(filtered(source, "al"), items);
+        assertTrue(added.isEmpty());
+    }
+
+    @Test
+    public void widenedFilterInsertsTheNewMatchesInSourceOrder() {
+        source.addAll("alpha", "beta", "gamma", "delta", "alpine", "epsilon");
+        FilteredItems<String> filteredItems = new FilteredItems<>(new FilterMediator<>(source), () -> items);
+        filteredItems.filter("alp");
+
+        List<String> removed = new ArrayList<>();
+        items.addListener((ListChangeListener<String>) c -> {
+            while (c.next()) {
+                removed.addAll(c.getRemoved());
+            }
+        });
+        filteredItems.filter("a");
+
+        assertEquals(filtered(source, "a"), items);
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void sourceChangesAreFollowedIncrementally() {
+        Random random = new Random(22);
+        for (int i = 0; i < 40; i++) {
+            source.add(randomText(random));
+        }
+        FilteredItems<String> filteredItems = new FilteredItems<>(new FilterMediator<>(source), () -> items);
+        filteredItems.filter("b");
+
+        for (int step = 0; step < 300; step++) {
+            changeRandomly(source, random);
+            assertEquals(filtered(source, "b"), items);
+        }
+    }
+
+    @Test
+    public void resultMatchedBeforeSourceChangesCatchesUp() {
+        Random random = new Random(21);
+        for (int i = 0; i < FilterMediator.PARALLEL_THRESHOLD; i++) {
+            source.add(randomText(random));
+        }
+        FilterMediator<String> mediator = new FilterMediator<>(source);
+        FilteredItems<String> filteredItems = new FilteredItems<>(mediator, () -> items);
+        filteredItems.filter("");
+
+        // the only worker is kept busy, so the parallel pass never publishes
+        // and its result is applied by hand instead
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mediator.setPool(pool);
+        try {
+            filteredItems.filter("ab");
+            int[] positions = mediator.matchRange("ab", 0, source.size());
+            List<String> matches = new ArrayList<>();
+            for (int position : positions) {
+                matches.add(source.get(position));
+            }
+            FilterMediator.Result<String> result = new FilterMediator.Result<>(matches, positions, mediator.getModCount());
+
+            for (int step = 0; step < 50; step++) {
+                changeRandomly(source, random);
+                // until the result arrives the items follow the filter they
+                // were filtered with, not the pending one
+                assertEquals(source.size(), items.size());
+            }
+            FXCollections.sort(source);
+            changeRandomly(source, random);
+
+            filteredItems.apply(result);
+            assertEquals(filtered(source, "ab"), items);
+
+            // and they follow the source from there on
+            changeRandomly(source, random);
+            assertEquals(filtered(source, "ab"), items);
+        } finally {
+            // drops the queued pass before the worker is free to run it
+            pool.shutdownNow();
+            busy.countDown();
+        }
+    }
+
+    @Test
+    public void resultOfAReplacedSourceIsDropped() {
+        source.addAll("alpha", "beta");
+        FilterMediator<String> mediator = new FilterMediator<>(source);
+        FilteredItems<String> filteredItems = new FilteredItems<>(mediator, () -> items);
+        filteredItems.filter("a");
+        FilterMediator.Result<String> stale = new FilterMediator.Result<>(
+                new ArrayList<>(List.of("alpha")), new int[]{0}, mediator.getModCount());
+
+        // recomputed keys are no source change the result could catch up with
+        mediator.setLocale(Locale.ROOT);
+        filteredItems.apply(stale);
+
+        assertEquals(filtered(source, "a"), items);
+        assertFalse(items.isEmpty());
+    }
+
+    @Test
+    public void cancelledFilterNoLongerHoldsBackRefiltering() {
+        Random random = new Random(23);
+        for (int i = 0; i < FilterMediator.PARALLEL_THRESHOLD; i++) {
+            source.add(randomText(random));
+        }
+        FilterMediator<String> mediator = new FilterMediator<>(source);
+        FilteredItems<String> filteredItems = new FilteredItems<>(mediator, () -> items);
+        filteredItems.filter("");
+
+        // the parallel pass never runs, like one a debouncer cancels
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mediator.setPool(pool);
+        try {
+            filteredItems.filter("ab");
+            filteredItems.cancel();
+
+            // small enough to be filtered on this thread
+            source.setAll(new ArrayList<>(source.subList(0, 200)));
+            assertEquals(source, items);
+
+            // a permutation is not followed, it filters again right away
+            FXCollections.sort(source);
+            assertEquals(filtered(source, "ab"), items);
+        } finally {
+            pool.shutdownNow();
+            busy.countDown();
+        }
+    }
+
+    // an insertion, a removal, a replacement or a permutation
+    private static void changeRandomly(ObservableList<String> list, Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                list.add(random.nextInt(list.size() + 1), randomText(random));
+                break;
+            case 1:
+                if (!list.isEmpty()) {
+                    list.remove(random.nextInt(list.size()));
+                }
+                break;
+            case 2:
+                if (!list.isEmpty()) {
+                    list.set(random.nextInt(list.size()), randomText(random));
+                }
+                break;
+            case 3:
+                List<String> added = new ArrayList<>();
+                for (int i = random.nextInt(5); i >= 0; i--) {
+                    added.add(randomText(random));
+                }
+                list.addAll(random.nextInt(list.size() + 1), added);
+                break;
+            default:
+                if (list.size() > 1) {
+                    int from = random.nextInt(list.size() - 1);
+                    list.remove(from, from + 1 + random.nextInt(Math.min(4, list.size() - from - 1)));
+                }
+                break;
+        }
+    }
+
+    private static List<String> filtered(List<String> list, String filter) {
+        String upper = filter.toUpperCase(Locale.ROOT);
+        return list.stream().filter(s -> s.toUpperCase(Locale.ROOT).contains(upper)).collect(Collectors.toList());
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 3 + random.nextInt(5); i > 0; i--) {
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
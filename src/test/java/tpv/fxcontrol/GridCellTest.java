@@ -0,0 +1,154 @@
+package tpv.fxcontrol;
+
+import javafx.collections.FXCollections;
+import javafx.css.PseudoClass;
+import javafx.scene.control.Label;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testfx.api.FxToolkit;
+import org.testfx.util.WaitForAsyncUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GridCellTest {
+
+    private static final PseudoClass LOADING = PseudoClass.getPseudoClass("loading");
+
+    private final ManualExecutor executor = new ManualExecutor();
+    private GridCell<String> cell;
+
+    @BeforeClass
+    public static void startToolkit() throws TimeoutException {
+        FxToolkit.registerPrimaryStage();
+    }
+
+    @Before
+    public void setUp() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            GridView<String> gridView = new GridView<>(FXCollections.observableArrayList("a", "b", "c"));
+            gridView.setAsyncExecutor(executor);
+            gridView.setAsyncGraphicFactory(Label::new);
+            cell = new GridCell<>();
+            cell.updateGridView(gridView);
+        });
+    }
+
+    @Test
+    public void graphicIsShownOnceRendered() throws TimeoutException {
+        FxToolkit.setupFixture(() -> cell.updateIndex(0));
+        assertTrue(isLoading());
+        assertNull(cell.getGraphic());
+
+        executor.runNext();
+        WaitForAsyncUtils.waitForFxEvents();
+        assertFalse(isLoading());
+        assertEquals("a", ((Label) cell.getGraphic()).getText());
+    }
+
+    @Test
+    public void resultForAnOldIndexIsDropped() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            cell.updateIndex(0);
+            // rendered, but the cell moves on before the result is applied
+            executor.runNext();
+            cell.updateIndex(1);
+        });
+        WaitForAsyncUtils.waitForFxEvents();
+        assertTrue(isLoading());
+        assertNull(cell.getGraphic());
+
+        executor.runNext();
+        WaitForAsyncUtils.waitForFxEvents();
+        assertEquals("b", ((Label) cell.getGraphic()).getText());
+    }
+
+    @Test
+    public void taskCancelledByTheExecutorIsRequestedAgain() throws TimeoutException {
+        FxToolkit.setupFixture(() -> cell.updateIndex(0));
+        Future<?> dropped = (Future<?>) executor.tasks.remove(0);
+        dropped.cancel(false);
+        WaitForAsyncUtils.waitForFxEvents();
+
+        assertEquals(1, executor.tasks.size());
+        assertNotSame(dropped, executor.tasks.get(0));
+        assertTrue(isLoading());
+
+        executor.runNext();
+        WaitForAsyncUtils.waitForFxEvents();
+        assertEquals("a", ((Label) cell.getGraphic()).getText());
+    }
+
+    @Test
+    public void rejectedTaskDoesNotLeaveTheCellLoading() throws TimeoutException {
+        executor.rejecting = true;
+        FxToolkit.setupFixture(() -> cell.updateIndex(0));
+
+        assertFalse(isLoading());
+        assertNull(cell.getGraphic());
+    }
+
+    @Test
+    public void emptiedCellDropsTheGraphicOfItsLastItem() throws TimeoutException {
+        FxToolkit.setupFixture(() -> cell.updateIndex(0));
+        executor.runNext();
+        WaitForAsyncUtils.waitForFxEvents();
+
+        FxToolkit.setupFixture(() -> cell.updateIndex(-1));
+        assertNull(cell.getGraphic());
+        assertFalse(isLoading());
+    }
+
+    private boolean isLoading() {
+        return cell.getPseudoClassStates().contains(LOADING);
+    }
+
+    // runs the tasks only when the test asks for it
+    private static final class ManualExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean rejecting;
+
+        @Override public void execute(Runnable command) {
+            if (rejecting) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.remove(0).run();
+        }
+
+        @Override public void shutdown() {
+        }
+
+        @Override public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override public boolean isShutdown() {
+            return false;
+        }
+
+        @Override public boolean isTerminated() {
+            return false;
+        }
+
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
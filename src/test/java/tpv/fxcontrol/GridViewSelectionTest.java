@@ -0,0 +1,307 @@
+package tpv.fxcontrol;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.MultipleSelectionModel;
+import javafx.scene.control.SelectionMode;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testfx.api.FxToolkit;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GridViewSelectionTest {
+
+    private static final int ITEM_COUNT = 10_000_000;
+
+    @BeforeClass
+    public static void startToolkit() throws TimeoutException {
+        FxToolkit.registerPrimaryStage();
+    }
+
+    @Test
+    public void selectedItemsDoNotGrowWithTheSelection() throws TimeoutException {
+        // counts every read of an item, the items themselves are never stored
+        AtomicLong reads = new AtomicLong();
+        ObservableList<Integer> items = FXCollections.observableList(new AbstractList<Integer>() {
+            @Override public Integer get(int index) {
+                reads.incrementAndGet();
+                return index;
+            }
+
+            @Override public int size() {
+                return ITEM_COUNT;
+            }
+        });
+
+        FxToolkit.setupFixture(() -> {
+            GridView<Integer> gridView = new GridView<>(items);
+            MultipleSelectionModel<Integer> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            ObservableList<Integer> selectedItems = sm.getSelectedItems();
+            AtomicInteger added = new AtomicInteger();
+            selectedItems.addListener((ListChangeListener<Integer>) c -> {
+                while (c.next()) {
+                    added.addAndGet(c.getAddedSize());
+                }
+            });
+
+            reads.set(0);
+            sm.selectAll();
+
+            // the selected item is read, the selected items are not
+            assertTrue(reads.get() < 10);
+            assertEquals(ITEM_COUNT, added.get());
+            assertEquals(ITEM_COUNT, selectedItems.size());
+
+            reads.set(0);
+            assertEquals(Integer.valueOf(ITEM_COUNT / 2), selectedItems.get(ITEM_COUNT / 2));
+            assertEquals(Integer.valueOf(ITEM_COUNT - 1), selectedItems.get(ITEM_COUNT - 1));
+            assertEquals(2, reads.get());
+
+            // only the removed items of a change are copied
+            reads.set(0);
+            sm.clearSelection(ITEM_COUNT / 2);
+            assertTrue(reads.get() < 10);
+            assertEquals(ITEM_COUNT - 1, selectedItems.size());
+        });
+    }
+
+    @Test
+    public void removedItemsAreTheItemsTheModelRemoved() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<String> items = FXCollections.observableArrayList("a", "b", "c", "d", "e", "f");
+            GridView<String> gridView = new GridView<>(items);
+            MultipleSelectionModel<String> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(1, 3);
+
+            List<String> removed = new ArrayList<>();
+            sm.getSelectedItems().addListener((ListChangeListener<String>) c -> {
+                while (c.next()) {
+                    removed.addAll(c.getRemoved());
+                }
+            });
+            items.remove(1, 4);
+
+            // not the items now at the removed indices
+            assertEquals(List.of("b", "d"), removed);
+        });
+    }
+
+    @Test
+    public void removedItemsOfASortAreTheItemsThatMoved() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<String> items = FXCollections.observableArrayList("d", "c", "b", "a");
+            GridView<String> gridView = new GridView<>(items);
+            MultipleSelectionModel<String> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(0, 1);
+
+            List<String> removed = new ArrayList<>();
+            sm.getSelectedItems().addListener((ListChangeListener<String>) c -> {
+                while (c.next()) {
+                    removed.addAll(c.getRemoved());
+                }
+            });
+            FXCollections.sort(items);
+
+            assertEquals(List.of("d", "c"), removed);
+            assertEquals(List.of("c", "d"), sm.getSelectedItems());
+        });
+    }
+
+    @Test
+    public void selectionBatchFiresOneChangeOfRuns() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            GridView<Integer> gridView = new GridView<>(numbers(100));
+            MultipleSelectionModel<Integer> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectRange(50, 53);
+
+            AtomicInteger changes = new AtomicInteger();
+            AtomicInteger itemChanges = new AtomicInteger();
+            List<String> subChanges = new ArrayList<>();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> {
+                changes.incrementAndGet();
+                while (c.next()) {
+                    subChanges.add(c.getAddedSubList() + " " + c.getRemoved());
+                }
+            });
+            sm.getSelectedItems().addListener((ListChangeListener<Integer>) c -> itemChanges.incrementAndGet());
+
+            gridView.runSelectionBatch(() -> {
+                sm.select(1);
+                sm.select(2);
+                sm.select(3);
+                gridView.runSelectionBatch(() -> {
+                    sm.clearSelection(51);
+                    sm.select(60);
+                });
+                // the inner batch does not deliver anything
+                assertEquals(0, changes.get());
+            });
+
+            assertEquals(1, changes.get());
+            assertEquals(1, itemChanges.get());
+            // one sub-change per run, not per edit
+            assertEquals(List.of("[1, 2, 3] []", "[] [51]", "[60] []"), subChanges);
+            assertEquals(List.of(1, 2, 3, 50, 52, 60), sm.getSelectedIndices());
+        });
+    }
+
+    @Test
+    public void selectionBatchWithoutNetChangeFiresNothing() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            GridView<Integer> gridView = new GridView<>(numbers(10));
+            MultipleSelectionModel<Integer> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.select(4);
+
+            AtomicInteger changes = new AtomicInteger();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> changes.incrementAndGet());
+            gridView.runSelectionBatch(() -> {
+                sm.select(7);
+                sm.clearSelection(7);
+            });
+
+            assertEquals(0, changes.get());
+        });
+    }
+
+    @Test
+    public void sortFiresOneChangeAndTheSelectionFollowsItsItems() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<String> items = FXCollections.observableArrayList("e", "d", "c", "b", "a");
+            GridView<String> gridView = new GridView<>(items);
+            MultipleSelectionModel<String> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(0, 3);
+            gridView.getFocusModel().focus(1);
+
+            AtomicInteger changes = new AtomicInteger();
+            List<String> subChanges = new ArrayList<>();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> {
+                changes.incrementAndGet();
+                while (c.next()) {
+                    subChanges.add(c.getAddedSubList() + " " + c.getRemoved());
+                }
+            });
+            FXCollections.sort(items);
+
+            assertEquals(1, changes.get());
+            assertEquals(List.of("[1, 4] [0, 3]"), subChanges);
+            assertEquals(List.of("b", "e"), sm.getSelectedItems());
+
+            // the lead was b, the focus was on d
+            assertEquals(1, sm.getSelectedIndex());
+            assertEquals("b", sm.getSelectedItem());
+            assertEquals(3, gridView.getFocusModel().getFocusedIndex());
+        });
+    }
+
+    @Test
+    public void sortWhichKeepsTheSelectedIndicesFiresNothing() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<String> items = FXCollections.observableArrayList("a", "c", "b", "d");
+            GridView<String> gridView = new GridView<>(items);
+            MultipleSelectionModel<String> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(0, 3);
+
+            AtomicInteger changes = new AtomicInteger();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> changes.incrementAndGet());
+            // only c and b swap
+            FXCollections.sort(items);
+
+            assertEquals(0, changes.get());
+            assertEquals(List.of("a", "d"), sm.getSelectedItems());
+        });
+    }
+
+    @Test
+    public void insertionShiftsTheSelectionInOneChange() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<Integer> items = numbers(20);
+            GridView<Integer> gridView = new GridView<>(items);
+            MultipleSelectionModel<Integer> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(2, 5, 6, 10);
+
+            AtomicInteger changes = new AtomicInteger();
+            List<Integer> added = new ArrayList<>();
+            List<Integer> removed = new ArrayList<>();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> {
+                changes.incrementAndGet();
+                while (c.next()) {
+                    added.addAll(c.getAddedSubList());
+                    removed.addAll(c.getRemoved());
+                }
+            });
+            items.addAll(4, List.of(100, 101));
+
+            assertEquals(1, changes.get());
+            // index 2 is before the insertion and stays selected
+            assertEquals(List.of(7, 8, 12), added);
+            assertEquals(List.of(5, 6, 10), removed);
+            assertEquals(List.of(2, 7, 8, 12), sm.getSelectedIndices());
+            assertEquals(List.of(2, 5, 6, 10), sm.getSelectedItems());
+            assertEquals(12, sm.getSelectedIndex());
+        });
+    }
+
+    @Test
+    public void removalShiftsTheSelectionInOneChange() throws TimeoutException {
+        FxToolkit.setupFixture(() -> {
+            ObservableList<Integer> items = numbers(20);
+            GridView<Integer> gridView = new GridView<>(items);
+            MultipleSelectionModel<Integer> sm = gridView.getSelectionModel();
+            sm.setSelectionMode(SelectionMode.MULTIPLE);
+            sm.selectIndices(2, 5, 6, 10);
+
+            AtomicInteger changes = new AtomicInteger();
+            List<Integer> added = new ArrayList<>();
+            List<Integer> removed = new ArrayList<>();
+            List<Integer> removedItems = new ArrayList<>();
+            sm.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> {
+                changes.incrementAndGet();
+                while (c.next()) {
+                    added.addAll(c.getAddedSubList());
+                    removed.addAll(c.getRemoved());
+                }
+            });
+            sm.getSelectedItems().addListener((ListChangeListener<Integer>) c -> {
+                while (c.next()) {
+                    removedItems.addAll(c.getRemoved());
+                }
+            });
+            // drops the items 4 and 5
+            items.remove(4, 6);
+
+            assertEquals(1, changes.get());
+            assertEquals(List.of(4, 8), added);
+            assertEquals(List.of(5, 6, 10), removed);
+            assertEquals(List.of(5, 6, 10), removedItems);
+            assertEquals(List.of(2, 4, 8), sm.getSelectedIndices());
+            assertEquals(List.of(2, 6, 10), sm.getSelectedItems());
+            assertEquals(8, sm.getSelectedIndex());
+        });
+    }
+
+    private static ObservableList<Integer> numbers(int count) {
+        ObservableList<Integer> numbers = FXCollections.observableArrayList();
+        for (int i = 0; i < count; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+}
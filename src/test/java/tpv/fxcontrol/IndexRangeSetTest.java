@@ -0,0 +1,256 @@
+package tpv.fxcontrol;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexRangeSetTest {
+
+    @Test
+    public void adjacentRunsAreMerged() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(2, 5);
+        set.set(7, 9);
+        set.set(5, 7);
+
+        assertEquals(1, set.rangeCount());
+        assertEquals(2, set.rangeStart(0));
+        assertEquals(9, set.rangeEnd(0));
+        assertEquals(7, set.cardinality());
+    }
+
+    @Test
+    public void clearSplitsARun() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(0, 10);
+        set.clear(4);
+
+        assertEquals(2, set.rangeCount());
+        assertEquals(9, set.cardinality());
+        assertFalse(set.get(4));
+        assertTrue(set.get(3));
+        assertTrue(set.get(5));
+    }
+
+    @Test
+    public void randomEditsMatchABitSet() {
+        Random random = new Random(11);
+        IndexRangeSet set = new IndexRangeSet();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 2000; i++) {
+            int from = random.nextInt(200);
+            int to = from + random.nextInt(20);
+            switch (random.nextInt(4)) {
+                case 0:
+                    set.set(from);
+                    expected.set(from);
+                    break;
+                case 1:
+                    set.set(from, to);
+                    expected.set(from, to);
+                    break;
+                case 2:
+                    set.clear(from);
+                    expected.clear(from);
+                    break;
+                default:
+                    set.clear(from, to);
+                    expected.clear(from, to);
+                    break;
+            }
+            assertSameIndices(expected, set);
+        }
+    }
+
+    @Test
+    public void ofSortedSkipsDuplicates() {
+        IndexRangeSet set = IndexRangeSet.ofSorted(new int[]{1, 2, 2, 3, 7, 7, 9, 99}, 7);
+
+        assertEquals(3, set.rangeCount());
+        assertEquals(5, set.cardinality());
+        assertFalse(set.get(99));
+    }
+
+    @Test
+    public void rankAndSelectMatchABitSet() {
+        Random random = new Random(12);
+        IndexRangeSet set = new IndexRangeSet();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(500);
+            int to = from + random.nextInt(30);
+            if (random.nextBoolean()) {
+                set.set(from, to);
+                expected.set(from, to);
+            } else {
+                set.clear(from, to);
+                expected.clear(from, to);
+            }
+
+            // queried after every edit, so the prefix counts are repaired
+            // from wherever the edit invalidated them
+            int rank = 0;
+            for (int index = 0; index <= expected.length() + 1; index++) {
+                assertEquals(rank, set.rank(index));
+                if (expected.get(index)) {
+                    assertEquals(index, set.select(rank));
+                    rank++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rankOfAnIndexInsideARun() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(10, 20);
+        set.set(30, 40);
+
+        assertEquals(0, set.rank(0));
+        assertEquals(0, set.rank(10));
+        assertEquals(5, set.rank(15));
+        assertEquals(10, set.rank(25));
+        assertEquals(15, set.rank(35));
+        assertEquals(20, set.rank(100));
+        assertEquals(10, set.select(0));
+        assertEquals(19, set.select(9));
+        assertEquals(30, set.select(10));
+        assertEquals(39, set.select(19));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void selectPastTheCardinality() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(3, 5);
+        set.select(2);
+    }
+
+    @Test
+    public void copyOfAnEmptyRangeInsideARunIsEmpty() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(0, 10);
+        IndexRangeSet copy = set.copy(5, 5);
+
+        assertTrue(copy.isEmpty());
+        assertEquals(0, copy.rangeCount());
+        assertEquals(0, copy.cardinality());
+    }
+
+    @Test
+    public void copyClipsTheRunsToTheRange() {
+        Random random = new Random(13);
+        for (int i = 0; i < 200; i++) {
+            IndexRangeSet set = new IndexRangeSet();
+            BitSet expected = new BitSet();
+            for (int j = 0; j < 10; j++) {
+                int from = random.nextInt(100);
+                int to = from + random.nextInt(10);
+                set.set(from, to);
+                expected.set(from, to);
+            }
+            int from = random.nextInt(110);
+            int to = from + random.nextInt(30);
+
+            // the copy keeps the indices where they are
+            expected.clear(0, from);
+            expected.clear(to, Math.max(to, expected.length()));
+            assertSameIndices(expected, set.copy(from, to));
+        }
+    }
+
+    @Test
+    public void shiftSplitsARunAtAnInsertion() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(0, 10);
+        set.shift(new int[]{4}, new int[]{3});
+
+        assertEquals(2, set.rangeCount());
+        assertEquals(4, set.rangeEnd(0));
+        assertEquals(7, set.rangeStart(1));
+        assertEquals(13, set.rangeEnd(1));
+        assertEquals(10, set.cardinality());
+    }
+
+    @Test
+    public void shiftJoinsTheRunsARemovalBringsTogether() {
+        IndexRangeSet set = new IndexRangeSet();
+        set.set(0, 4);
+        set.set(6, 10);
+        set.shift(new int[]{4}, new int[]{-2});
+
+        assertEquals(1, set.rangeCount());
+        assertEquals(8, set.rangeEnd(0));
+        assertEquals(8, set.cardinality());
+    }
+
+    @Test
+    public void shiftBatchesMatchABitSet() {
+        Random random = new Random(14);
+        for (int i = 0; i < 300; i++) {
+            IndexRangeSet set = new IndexRangeSet();
+            BitSet expected = new BitSet();
+            for (int j = 0; j < 8; j++) {
+                int from = random.nextInt(100);
+                int to = from + random.nextInt(15);
+                set.set(from, to);
+                expected.set(from, to);
+            }
+
+            // pairs by descending position, applied in that order
+            int pairs = 1 + random.nextInt(5);
+            int[] positions = new int[pairs];
+            int[] amounts = new int[pairs];
+            int position = 130;
+            for (int j = 0; j < pairs; j++) {
+                position = random.nextInt(position + 1);
+                positions[j] = position;
+                amounts[j] = random.nextBoolean() ? 1 + random.nextInt(10) : -1 - random.nextInt(10);
+                expected = shifted(expected, position, amounts[j]);
+            }
+            set.shift(positions, amounts);
+
+            assertSameIndices(expected, set);
+            for (int index = 0; index < expected.cardinality(); index++) {
+                assertEquals(index, set.rank(set.select(index)));
+            }
+        }
+    }
+
+    // inserts amount indices at position, or removes -amount of them
+    private static BitSet shifted(BitSet set, int position, int amount) {
+        BitSet result = new BitSet();
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            if (i < position) {
+                result.set(i);
+            } else if (amount > 0) {
+                result.set(i + amount);
+            } else if (i >= position - amount) {
+                result.set(i + amount);
+            }
+        }
+        return result;
+    }
+
+    static void assertSameIndices(BitSet expected, IndexRangeSet set) {
+        assertEquals(expected.cardinality(), set.cardinality());
+        assertEquals(expected.length(), set.length());
+        assertEquals(expected.isEmpty(), set.isEmpty());
+        for (int k = 0; k < set.rangeCount(); k++) {
+            assertTrue(set.rangeStart(k) < set.rangeEnd(k));
+            if (k > 0) {
+                // runs are disjoint and not adjacent
+                assertTrue(set.rangeEnd(k - 1) < set.rangeStart(k));
+            }
+        }
+        for (int i = 0; i <= expected.length(); i++) {
+            assertEquals(expected.get(i), set.get(i));
+            assertEquals(expected.nextSetBit(i), set.nextSetBit(i));
+            assertEquals(expected.previousSetBit(i), set.previousSetBit(i));
+        }
+    }
+}
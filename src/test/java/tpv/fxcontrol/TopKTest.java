@@ -0,0 +1,84 @@
+package tpv.fxcontrol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TopKTest {
+
+    @Test
+    public void keepsTheBestScoresBestFirst() {
+        TopK top = new TopK(3);
+        int[] scores = {5, -1, 9, 7, 0, 9};
+        for (int i = 0; i < scores.length; i++) {
+            top.offer(scores[i], i);
+        }
+
+        // equal scores in source order
+        assertArrayEquals(new int[]{2, 5, 3}, top.positions());
+    }
+
+    @Test
+    public void keepsEveryMatchBelowTheLimit() {
+        TopK top = new TopK(10);
+        top.offer(1, 4);
+        top.offer(2, 8);
+
+        assertArrayEquals(new int[]{8, 4}, top.positions());
+    }
+
+    @Test
+    public void zeroLimitKeepsNothing() {
+        TopK top = new TopK(0);
+        top.offer(1, 0);
+
+        assertArrayEquals(new int[0], top.positions());
+    }
+
+    @Test
+    public void agreesWithAFullSort() {
+        Random random = new Random(25);
+        for (int round = 0; round < 200; round++) {
+            int count = random.nextInt(500);
+            int limit = random.nextInt(40);
+            int[] scores = new int[count];
+            for (int i = 0; i < count; i++) {
+                // few distinct scores, so ties are common, and the extremes
+                switch (random.nextInt(10)) {
+                    case 0:
+                        scores[i] = Integer.MAX_VALUE;
+                        break;
+                    case 1:
+                        scores[i] = Integer.MIN_VALUE + 1;
+                        break;
+                    default:
+                        scores[i] = random.nextInt(20) - 10;
+                        break;
+                }
+            }
+
+            // offered in chunks which are merged, as the parallel ranking does
+            TopK top = new TopK(limit);
+            for (int from = 0; from < count; from += 64) {
+                TopK chunk = new TopK(limit);
+                for (int i = from; i < Math.min(count, from + 64); i++) {
+                    chunk.offer(scores[i], i);
+                }
+                top.addAll(chunk);
+            }
+
+            int[] expected = IntStream.range(0, count).boxed()
+                    .sorted(Comparator.<Integer>comparingInt(i -> scores[i]).reversed()
+                            .thenComparingInt(i -> i))
+                    .limit(limit)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(Arrays.toString(scores), expected, top.positions());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package tpv.fxcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+
+    private static final String ALPHABET = "ABCD";
+
+    @Test
+    public void shortQueriesDoNotUseTheIndex() {
+        TrigramIndex index = new TrigramIndex(FilterIndex.BITSET);
+        index.rebuild(Arrays.asList("ABC", "XYZ"));
+
+        assertNull(index.candidates("AB"));
+        assertArrayEquals(new int[]{0}, index.candidates("ABC"));
+        assertArrayEquals(new int[0], index.candidates("QQQ"));
+    }
+
+    @Test
+    public void candidatesFollowEditsWithBitSetPostings() {
+        candidatesFollowEdits(FilterIndex.BITSET);
+    }
+
+    @Test
+    public void candidatesFollowEditsWithIntArrayPostings() {
+        candidatesFollowEdits(FilterIndex.INT_ARRAY);
+    }
+
+    @Test
+    public void removingMostKeysAsksForCompaction() {
+        TrigramIndex index = new TrigramIndex(FilterIndex.INT_ARRAY);
+        List<String> keys = new ArrayList<>(Collections.nCopies(10_000, "ABCD"));
+        index.rebuild(keys);
+        assertFalse(index.needsCompaction());
+
+        index.remove(0, keys.subList(0, 9_000));
+        assertTrue(index.needsCompaction());
+        index.rebuild(keys.subList(0, 1_000));
+        assertFalse(index.needsCompaction());
+    }
+
+    private static void candidatesFollowEdits(FilterIndex format) {
+        Random random = new Random(20);
+        List<String> keys = new ArrayList<>();
+        TrigramIndex index = new TrigramIndex(format);
+        for (int i = 0; i < 50; i++) {
+            keys.add(randomKey(random));
+        }
+        index.rebuild(keys);
+
+        for (int step = 0; step < 500; step++) {
+            int edit = random.nextInt(3);
+            if (edit == 0 || keys.isEmpty()) {
+                int position = random.nextInt(keys.size() + 1);
+                List<String> added = new ArrayList<>();
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    added.add(randomKey(random));
+                }
+                index.insert(position, added);
+                keys.addAll(position, added);
+            } else if (edit == 1) {
+                int position = random.nextInt(keys.size());
+                List<String> removed = keys.subList(position, Math.min(keys.size(), position + 1 + random.nextInt(3)));
+                index.remove(position, removed);
+                removed.clear();
+            } else {
+                // reverses a range, as a sort would move it
+                int from = random.nextInt(keys.size());
+                int to = from + random.nextInt(keys.size() - from) + 1;
+                int[] permutation = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    permutation[i - from] = to - 1 - (i - from);
+                }
+                index.permute(from, to, permutation);
+                Collections.reverse(keys.subList(from, to));
+            }
+
+            String query = randomKey(random).substring(0, 3 + random.nextInt(3));
+            assertArrayEquals(containingTrigrams(keys, query), index.candidates(query));
+        }
+    }
+
+    // the positions of the keys which contain every trigram of the query
+    private static int[] containingTrigrams(List<String> keys, String query) {
+        return IntStream.range(0, keys.size()).filter(i -> {
+            for (int j = 0; j + 3 <= query.length(); j++) {
+                if (!keys.get(i).contains(query.substring(j, j + 3))) {
+                    return false;
+                }
+            }
+            return true;
+        }).toArray();
+    }
+
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 6 + random.nextInt(6); i > 0; i--) {
+            key.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return key.toString();
+    }
+}
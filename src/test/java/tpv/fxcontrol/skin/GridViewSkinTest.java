@@ -0,0 +1,205 @@
+package tpv.fxcontrol.skin;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.testfx.api.FxToolkit;
+import org.testfx.util.WaitForAsyncUtils;
+import tpv.fxcontrol.GridCell;
+import tpv.fxcontrol.GridView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GridViewSkinTest {
+
+    private Stage stage;
+    private GridView<Integer> gridView;
+
+    @Before
+    public void setUp() throws TimeoutException {
+        stage = FxToolkit.registerPrimaryStage();
+        FxToolkit.setupFixture(() -> {
+            // a few items, so the vertical scrollbar never shows
+            gridView = new GridView<>(FXCollections.observableArrayList(1, 2, 3, 4, 5, 6, 7, 8));
+            gridView.setCellWidth(100);
+            gridView.setCellHeight(20);
+            gridView.setHorizontalCellSpacing(5);
+
+            // unmanaged, so its size is the one set here
+            gridView.setManaged(false);
+            gridView.resize(580, 400);
+            stage.setScene(new Scene(new Pane(gridView), 800, 600));
+            stage.show();
+        });
+        WaitForAsyncUtils.waitForFxEvents();
+    }
+
+    @After
+    public void tearDown() throws TimeoutException {
+        FxToolkit.setupFixture(() -> stage.hide());
+    }
+
+    @Test
+    public void resizingTheControlUpdatesTheColumnCount() throws TimeoutException {
+        GridViewSkin<?> skin = (GridViewSkin<?>) gridView.getSkin();
+        assertEquals(expectedColumns(580), skin.computeMaxCellsInRow());
+
+        resize(340);
+        assertEquals(expectedColumns(340), skin.computeMaxCellsInRow());
+
+        resize(800);
+        assertEquals(expectedColumns(800), skin.computeMaxCellsInRow());
+    }
+
+    @Test
+    public void resizingAroundAColumnBoundaryDoesNotFlipTheColumnCount() throws TimeoutException {
+        GridViewSkin<?> skin = (GridViewSkin<?>) gridView.getSkin();
+        double horizontalInsets = gridView.getInsets().getLeft() + gridView.getInsets().getRight();
+
+        // five cells of 110 need a row of 550
+        resize(horizontalInsets + 545);
+        assertEquals(4, skin.computeMaxCellsInRow());
+        long updates = skin.getColumnCountUpdateCount();
+
+        for (int i = 0; i < 5; i++) {
+            resize(horizontalInsets + 553);
+            resize(horizontalInsets + 545);
+        }
+        assertEquals(4, skin.computeMaxCellsInRow());
+        assertEquals(updates, skin.getColumnCountUpdateCount());
+
+        // past the margin the column is added, and removed again when it
+        // no longer fits
+        resize(horizontalInsets + 560);
+        assertEquals(5, skin.computeMaxCellsInRow());
+        resize(horizontalInsets + 549);
+        assertEquals(4, skin.computeMaxCellsInRow());
+        assertEquals(updates + 2, skin.getColumnCountUpdateCount());
+    }
+
+    @Test
+    public void returnedCellIsBorrowedAgain() throws TimeoutException {
+        AtomicInteger created = new AtomicInteger();
+        FxToolkit.setupFixture(() -> gridView.setCellFactory(gv -> {
+            created.incrementAndGet();
+            return new GridCell<>();
+        }));
+        WaitForAsyncUtils.waitForFxEvents();
+
+        FxToolkit.setupFixture(() -> {
+            GridViewSkin<Integer> skin = (GridViewSkin<Integer>) gridView.getSkin();
+            GridCell<Integer> cell = skin.borrowCell();
+            cell.updateIndex(3);
+            skin.returnCell(cell);
+            // a returned cell is emptied
+            assertEquals(-1, cell.getIndex());
+
+            int createdBefore = created.get();
+            assertSame(cell, skin.borrowCell());
+            assertEquals(createdBefore, created.get());
+        });
+    }
+
+    @Test
+    public void poolHoldsNoMoreCellsThanTheViewportShows() throws TimeoutException {
+        AtomicInteger created = new AtomicInteger();
+        FxToolkit.setupFixture(() -> gridView.setCellFactory(gv -> {
+            created.incrementAndGet();
+            return new GridCell<>();
+        }));
+        WaitForAsyncUtils.waitForFxEvents();
+
+        FxToolkit.setupFixture(() -> {
+            GridViewSkin<Integer> skin = (GridViewSkin<Integer>) gridView.getSkin();
+            List<GridCell<Integer>> cells = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                cells.add(skin.borrowCell());
+            }
+            cells.forEach(skin::returnCell);
+
+            // borrowing as many again only reuses what the pool kept
+            int createdBefore = created.get();
+            for (int i = 0; i < 1000; i++) {
+                skin.borrowCell();
+            }
+            int reused = 1000 - (created.get() - createdBefore);
+
+            double rowHeight = gridView.getCellHeight() + 2 * gridView.getVerticalCellSpacing();
+            int visibleRows = (int) Math.ceil(gridView.getHeight() / rowHeight) + 1;
+            assertTrue(reused > 0);
+            assertTrue(reused <= skin.computeMaxCellsInRow() * visibleRows);
+        });
+    }
+
+    @Test
+    public void scrollingAnnouncesEveryPrefetchedItemOnce() throws TimeoutException {
+        List<Integer> announced = new ArrayList<>();
+        FxToolkit.setupFixture(() -> {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                items.add(i);
+            }
+            gridView.getItems().setAll(items);
+            gridView.setPrefetchHandler(announced::addAll);
+        });
+        WaitForAsyncUtils.waitForFxEvents();
+
+        GridViewSkin<?> skin = (GridViewSkin<?>) gridView.getSkin();
+        int columns = skin.computeMaxCellsInRow();
+        for (int row = 1; row <= 20; row++) {
+            int index = row * columns;
+            FxToolkit.setupFixture(() -> skin.scrollToIndex(index));
+            WaitForAsyncUtils.waitForFxEvents();
+        }
+
+        assertTrue(announced.size() > 0);
+        assertEquals(announced.size(), new HashSet<>(announced).size());
+        // scrolling down announces rows below the viewport, never rows in it
+        assertTrue(Collections.min(announced) >= 2 * columns);
+    }
+
+    @Test
+    public void appendingItemsKeepsTheExistingCells() throws TimeoutException {
+        // two full rows
+        FxToolkit.setupFixture(() -> gridView.getItems().addAll(9, 10));
+        WaitForAsyncUtils.waitForFxEvents();
+        assertEquals(5, ((GridViewSkin<?>) gridView.getSkin()).computeMaxCellsInRow());
+
+        Set<Node> cells = new HashSet<>(gridView.lookupAll(".grid-cell"));
+        long updates = gridView.getCellUpdateCount();
+
+        // a new row, which re-indexes neither the rows nor the cells before it
+        FxToolkit.setupFixture(() -> gridView.getItems().add(11));
+        WaitForAsyncUtils.waitForFxEvents();
+
+        assertTrue(gridView.lookupAll(".grid-cell").containsAll(cells));
+        assertTrue(gridView.getCellUpdateCount() - updates < cells.size());
+    }
+
+    private void resize(double width) throws TimeoutException {
+        FxToolkit.setupFixture(() -> gridView.resize(width, 400));
+        WaitForAsyncUtils.waitForFxEvents();
+    }
+
+    private int expectedColumns(double width) {
+        Insets insets = gridView.getInsets();
+        double cellWidth = gridView.getCellWidth() + 2 * gridView.getHorizontalCellSpacing();
+        return (int) Math.floor((width - insets.getLeft() - insets.getRight()) / cellWidth);
+    }
+}
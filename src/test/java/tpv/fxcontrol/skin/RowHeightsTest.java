@@ -0,0 +1,112 @@
+package tpv.fxcontrol.skin;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RowHeightsTest {
+
+    private static final double CELL_HEIGHT = 10;
+
+    @Test
+    public void rowIsAsHighAsItsTallestItem() {
+        RowHeights heights = new RowHeights();
+        heights.setAll(new double[]{5, 30, 20, 7, 8}, 5, 2);
+
+        assertEquals(3, heights.getRowCount());
+        assertEquals(30, heights.rowHeight(0, CELL_HEIGHT), 0);
+        assertEquals(20, heights.rowHeight(1, CELL_HEIGHT), 0);
+        assertEquals(8, heights.rowHeight(2, CELL_HEIGHT), 0);
+    }
+
+    @Test
+    public void itemsWithoutHeightUseTheDefaultWhenRead() {
+        RowHeights heights = new RowHeights();
+        heights.setAll(new double[]{Double.NaN, 4}, 2, 2);
+
+        assertEquals(10, heights.rowHeight(0, 10), 0);
+        assertEquals(25, heights.rowHeight(0, 25), 0);
+        assertEquals(25, heights.itemHeight(0, 25), 0);
+        assertEquals(4, heights.itemHeight(1, 25), 0);
+    }
+
+    @Test
+    public void setColumnsRegroupsFromTheCachedHeights() {
+        RowHeights heights = new RowHeights();
+        heights.setAll(new double[]{1, 2, 3, 4, 5, 6}, 6, 3);
+        assertEquals(3, heights.rowHeight(0, CELL_HEIGHT), 0);
+
+        heights.setColumns(2);
+        assertEquals(3, heights.getRowCount());
+        assertEquals(2, heights.rowHeight(0, CELL_HEIGHT), 0);
+        assertEquals(4, heights.rowHeight(1, CELL_HEIGHT), 0);
+        assertEquals(6, heights.rowHeight(2, CELL_HEIGHT), 0);
+    }
+
+    @Test
+    public void randomEditsMatchARegroupFromScratch() {
+        Random random = new Random(7);
+        List<Double> model = new ArrayList<>();
+        RowHeights heights = new RowHeights();
+        heights.setAll(new double[0], 0, 3);
+
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(4);
+            if (op == 0 || model.isEmpty()) {
+                int from = random.nextInt(model.size() + 1);
+                double[] added = randomHeights(random, random.nextInt(5));
+                for (int i = 0; i < added.length; i++) {
+                    model.add(from + i, added[i]);
+                }
+                heights.replace(from, 0, added);
+            } else if (op == 1) {
+                int from = random.nextInt(model.size());
+                int count = 1 + random.nextInt(Math.min(4, model.size() - from));
+                model.subList(from, from + count).clear();
+                heights.replace(from, count, new double[0]);
+            } else if (op == 2) {
+                int from = random.nextInt(model.size());
+                int to = from + 1 + random.nextInt(Math.min(5, model.size() - from));
+                int[] permutation = new int[to - from];
+                List<Double> moved = new ArrayList<>(model.subList(from, to));
+                for (int i = 0; i < permutation.length; i++) {
+                    permutation[i] = to - 1 - i;
+                }
+                for (int i = 0; i < permutation.length; i++) {
+                    model.set(permutation[i], moved.get(i));
+                }
+                heights.permute(from, to, permutation);
+            } else {
+                heights.setColumns(1 + random.nextInt(5));
+            }
+            assertSameRows(model, heights);
+        }
+    }
+
+    private static double[] randomHeights(Random random, int count) {
+        double[] heights = new double[count];
+        for (int i = 0; i < count; i++) {
+            heights[i] = random.nextInt(4) == 0 ? Double.NaN : random.nextInt(50);
+        }
+        return heights;
+    }
+
+    private static void assertSameRows(List<Double> model, RowHeights heights) {
+        int columns = heights.getColumns();
+        int rowCount = (model.size() + columns - 1) / columns;
+        assertEquals(model.size(), heights.getItemCount());
+        assertEquals(rowCount, heights.getRowCount());
+        for (int row = 0; row < rowCount; row++) {
+            double expected = 0;
+            for (int i = row * columns; i < Math.min(model.size(), (row + 1) * columns); i++) {
+                double height = model.get(i);
+                expected = Math.max(expected, Double.isNaN(height) ? CELL_HEIGHT : height);
+            }
+            assertEquals("row " + row, expected, heights.rowHeight(row, CELL_HEIGHT), 0);
+        }
+    }
+}